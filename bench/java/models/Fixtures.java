@@ -0,0 +1,146 @@
+package models;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fixtures loads the recorded API responses used by the benchmarks. Besides the realistic responses it can inflate
+ * them to a multiple of their size: the scheduled episodes are repeated with their times shifted past the previous
+ * copy, and the channels are repeated with new ids, so the larger fixtures stay valid API responses.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+final class Fixtures {
+    static final String CHANNELS = "channels.xml";
+    static final String SCHEDULE = "scheduledepisodes.xml";
+    /** The day in the middle of the three days the recorded schedule covers */
+    static final LocalDate RECORDED_ON = LocalDate.of(2026, 10, 17);
+
+    private static final Pattern EPISODE_TIME =
+            Pattern.compile("<(starttimeutc|endtimeutc)>([^<]+)</\\1>");
+    private static final Pattern CHANNEL_ID = Pattern.compile("(<channel id=\"|<liveaudio id=\")(\\d+)\"");
+
+    private Fixtures() { }
+
+    /**
+     * @param name fixture file name
+     * @param scale 1 for the recorded response, otherwise how many copies of its content the response should have
+     * @return the response body
+     */
+    static byte[] load(String name, int scale) {
+        String xml = read(name);
+        if (scale <= 1)
+            return xml.getBytes(StandardCharsets.UTF_8);
+        return copies(xml, name, 0, scale);
+    }
+
+    /**
+     * @param name fixture file name
+     * @param copy which copy of the content the response should have, 0 is the recorded response
+     * @return a response with only that copy of the content
+     */
+    static byte[] copy(String name, int copy) {
+        return copies(read(name), name, copy, copy + 1);
+    }
+
+    /**
+     * @param label "realistic" or "10x"
+     * @return the scale the label stands for
+     */
+    static int scale(String label) {
+        return label.equals("realistic") ? 1 : Integer.parseInt(label.substring(0, label.length() - 1));
+    }
+
+    /**
+     * Parse the recorded schedule and move it in time so that it is centred on the current time, which keeps the
+     * -6h/+12h window of the table filled whenever the benchmarks run
+     * @return Schedule around now
+     */
+    static Schedule scheduleAroundNow() {
+        try {
+            Schedule recorded = new RadioParser(null).readProgrammes(
+                    RadioParser.parse(new ByteArrayInputStream(load(SCHEDULE, 1))));
+            long shift = Instant.now().getEpochSecond()
+                    - (recorded.get(0).start() + recorded.get(recorded.size() - 1).end()) / 2;
+            Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+            for (Programme p : recorded)
+                builder.addProgramme(p.name(), p.start() + shift, p.end() + shift, p.imagePath(), p.description());
+            return builder.buildSchedule();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Move every episode of a schedule response in time
+     * @param xml scheduled episodes response
+     * @param shift how far to move the episodes
+     * @return the moved response
+     */
+    static byte[] shift(byte[] xml, Duration shift) {
+        return shift(new String(xml, StandardCharsets.UTF_8), shift).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private interface Copier {
+        String copy(String body, int copy);
+    }
+
+    private static byte[] copies(String xml, String name, int first, int last) {
+        return switch (name) {
+            case SCHEDULE -> inflate(xml, "schedule", first, last, Fixtures::shiftEpisodes);
+            case CHANNELS -> inflate(xml, "channels", first, last, Fixtures::renumberChannels);
+            default -> throw new IllegalArgumentException(name);
+        };
+    }
+
+    private static byte[] inflate(String xml, String wrapper, int first, int last, Copier copier) {
+        int from = xml.indexOf('>', xml.indexOf("<" + wrapper)) + 1;
+        int to = xml.indexOf("</" + wrapper + ">");
+        String body = xml.substring(from, to);
+        StringBuilder out = new StringBuilder(xml.length() * (last - first)).append(xml, 0, from);
+        for (int copy = first; copy < last; copy++)
+            out.append(copier.copy(body, copy));
+        out.append(xml, to, xml.length());
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String shiftEpisodes(String body, int copy) {
+        return copy == 0 ? body : shift(body, Duration.ofDays(3L * copy));
+    }
+
+    private static String shift(String body, Duration shift) {
+        Matcher m = EPISODE_TIME.matcher(body);
+        StringBuilder out = new StringBuilder(body.length());
+        while (m.find()) {
+            String time = Instant.parse(m.group(2)).plus(shift).toString();
+            m.appendReplacement(out, "<" + m.group(1) + ">" + time + "</" + m.group(1) + ">");
+        }
+        return m.appendTail(out).toString();
+    }
+
+    private static String renumberChannels(String body, int copy) {
+        if (copy == 0)
+            return body;
+        return CHANNEL_ID.matcher(body).replaceAll(r -> r.group(1) + copy + r.group(2) + "\"");
+    }
+
+    private static String read(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null)
+                throw new IllegalStateException("Missing fixture " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
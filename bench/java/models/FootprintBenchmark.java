@@ -0,0 +1,79 @@
+package models;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Measures the heap retained by the cached schedules of every channel. The schedule of each channel is parsed from
+ * the recorded response, with its times moved so no two channels are alike, and the used heap is compared after a
+ * full collection before and after. Titles and descriptions repeat between channels, as they do between the P4
+ * channels. The result is reported as the retainedBytes and bytesPerProgramme counters.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseSerialGC")
+public class FootprintBenchmark {
+    private static final int CHANNELS = 50;
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private byte[][] responses;
+    private Schedule[] cached;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Retained {
+        public long retainedBytes;
+        public long bytesPerProgramme;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        responses = new byte[CHANNELS][];
+        for (int c = 0; c < CHANNELS; c++)
+            responses[c] = Fixtures.copy(Fixtures.SCHEDULE, c);
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        cached = null;
+    }
+
+    @Benchmark
+    public void cacheAllChannels(Retained retained) throws Exception {
+        long before = usedAfterGc();
+        RadioParser parser = new RadioParser(null);
+        Schedule[] schedules = new Schedule[CHANNELS];
+        long programmes = 0;
+        for (int c = 0; c < CHANNELS; c++) {
+            schedules[c] = parser.readProgrammes(RadioParser.parse(new ByteArrayInputStream(responses[c])));
+            programmes += schedules[c].size();
+        }
+        cached = schedules;
+        retained.retainedBytes = usedAfterGc() - before;
+        retained.bytesPerProgramme = retained.retainedBytes / programmes;
+    }
+
+    private static long usedAfterGc() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,235 @@
+package models;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadDriver measures end-to-end refresh latency and throughput against the StandInServer. It points the app at the
+ * server, fetches the channel list and then refreshes every channel for a number of rounds, the same way the
+ * RefreshScheduler refreshes a channel: UpdaterModel.fetchChannel on a fixed pool, through the shared ApiClient, into
+ * a ScheduleCache. Every round refreshes all channels back to back, which is the worst case the scheduler avoids. The first round fills the empty cache, the following rounds are refreshes. For every round the
+ * latency of each channel and the throughput of the whole round are printed.
+ * With --mode warm the channels are instead warmed by a BulkWarmer once per concurrency given in --concurrency, each
+ * time into an empty cache, and the total warm time is printed.
+ * With --mode serve every channel is loaded into a ScheduleService that a ScheduleServer serves, and --clients
+ * threads ask it for random schedules for --seconds, with If-None-Match unless --revalidate is false. The requests per
+ * second and the latency as seen by the clients are printed.
+ *
+ * Run with: java -cp target/benchmarks.jar models.LoadDriver [--channels 300] [--rounds 5] [--parallelism 4]
+ * [--latency 50] [--jitter 50] [--error-rate 0.01] [--change-rate 0.1] [--scale 1] [--gzip true]
+ * [--recorded dir-with-channels.xml-and-scheduledepisodes.xml] [--mode warm --concurrency 1,2,4 --rate 100]
+ * [--mode serve --clients 16 --seconds 10 --revalidate true --threads 4]
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class LoadDriver {
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (options.getOrDefault("mode", "refresh").equals("serve"))
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        int rounds = Integer.parseInt(options.getOrDefault("rounds", "5"));
+        int parallelism = Integer.parseInt(options.getOrDefault("parallelism", "4"));
+
+        StandInServer.Builder builder = StandInServer.builder()
+                .channels(Integer.parseInt(options.getOrDefault("channels", "300")))
+                .latency(Duration.ofMillis(Long.parseLong(options.getOrDefault("latency", "50"))),
+                        Duration.ofMillis(Long.parseLong(options.getOrDefault("jitter", "50"))))
+                .errorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")))
+                .changeRate(Double.parseDouble(options.getOrDefault("change-rate", "0.1")))
+                .payloadScale(Integer.parseInt(options.getOrDefault("scale", "1")))
+                .gzip(Boolean.parseBoolean(options.getOrDefault("gzip", "true")));
+        if (options.containsKey("recorded")) {
+            Path dir = Path.of(options.get("recorded"));
+            builder.recorded(Files.readAllBytes(dir.resolve(Fixtures.CHANNELS)),
+                    Files.readAllBytes(dir.resolve(Fixtures.SCHEDULE)));
+        }
+
+        try (StandInServer server = builder.start()) {
+            System.setProperty(ApiEndpoint.PROPERTY, server.uri().toString());
+            System.out.println("Stand-in server on " + server.uri() + ", options " + options);
+
+            long start = System.nanoTime();
+            ArrayList<Channel> channels = new RadioParser().fetchChannels();
+            if (channels == null)
+                throw new IOException("Could not fetch the channel list");
+            System.out.printf("channel list: %d channels in %.1f ms%n", channels.size(), millis(System.nanoTime() - start));
+
+            if (options.getOrDefault("mode", "refresh").equals("warm")) {
+                warm(channels, options);
+                return;
+            }
+            if (options.getOrDefault("mode", "refresh").equals("serve")) {
+                serve(options);
+                return;
+            }
+
+            ScheduleCache programMap = new ScheduleCache();
+            new ScheduleIndex(programMap);
+            ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+            try {
+                System.out.println("round  channels  failed  wall ms  channels/s  p50 ms  p90 ms  p99 ms  max ms"
+                        + "  requests  304s  503s  KiB sent");
+                for (int round = 1; round <= rounds; round++)
+                    runRound(round, channels, programMap, pool, server);
+            } finally {
+                pool.shutdownNow();
+            }
+            System.out.printf("cache: %d channels, %d changed and %d unchanged refreshes%n",
+                    programMap.keySet().size(), programMap.getChangedRefreshes(), programMap.getUnchangedRefreshes());
+            Metrics.histograms().forEach((name, h) -> System.out.printf(
+                    "%-20s %6d  mean %10.1f  p50 %10d  p99 %10d  max %10d %s%n", name, h.getCount(), h.getMean(),
+                    h.getP50(), h.getP99(), h.getMax(), h.getUnit()));
+        }
+    }
+
+    private static void warm(List<Channel> channels, Map<String, String> options) {
+        double rate = Double.parseDouble(options.getOrDefault("rate", "100"));
+        System.out.println("concurrency  channels  failed  warm ms  channels/s");
+        for (String c : options.getOrDefault("concurrency", "1,2,4").split(",")) {
+            int concurrency = Integer.parseInt(c.trim());
+            BulkWarmer warmer = new BulkWarmer(concurrency, rate, concurrency, () -> false);
+            long start = System.nanoTime();
+            BulkWarmer.Progress progress = warmer.warm(channels, new ScheduleCache(), p -> { }).join();
+            long wall = System.nanoTime() - start;
+            System.out.printf("%11d  %8d  %6d  %7.0f  %10.1f%n", concurrency, progress.total(), progress.failed(),
+                    millis(wall), progress.done() / (wall / 1e9));
+        }
+    }
+
+    private static void serve(Map<String, String> options) throws Exception {
+        int clients = Integer.parseInt(options.getOrDefault("clients", "16"));
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "10"));
+        boolean revalidate = Boolean.parseBoolean(options.getOrDefault("revalidate", "true"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        ScheduleService service = new ScheduleService();
+        List<Channel> channels = service.fetchChannels(ch -> { });
+        if (channels == null)
+            throw new IOException("Could not fetch the channel list");
+        channels.parallelStream().forEach(ch -> service.getFullSchedule(ch.id));
+
+        try (ScheduleServer server = new ScheduleServer(service, new InetSocketAddress("127.0.0.1", 0), threads)) {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/schedules/";
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            AtomicLong ok = new AtomicLong(), notModified = new AtomicLong(), failed = new AtomicLong();
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            ArrayList<Future<long[]>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                futures.add(pool.submit(() -> {
+                    HashMap<String, String> eTags = new HashMap<>();
+                    long[] latencies = new long[1024];
+                    int n = 0;
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        String id = channels.get(random.nextInt(channels.size())).id;
+                        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + id))
+                                .header("Accept-Encoding", "gzip");
+                        if (revalidate && eTags.containsKey(id))
+                            request.header("If-None-Match", eTags.get(id));
+                        long t = System.nanoTime();
+                        HttpResponse<byte[]> response = client.send(request.build(),
+                                HttpResponse.BodyHandlers.ofByteArray());
+                        if (n == latencies.length)
+                            latencies = Arrays.copyOf(latencies, n * 2);
+                        latencies[n++] = System.nanoTime() - t;
+                        if (response.statusCode() == 200) {
+                            ok.incrementAndGet();
+                            response.headers().firstValue("ETag").ifPresent(e -> eTags.put(id, e));
+                        } else if (response.statusCode() == 304) {
+                            notModified.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    }
+                    return Arrays.copyOf(latencies, n);
+                }));
+            }
+            long[] latencies = new long[0];
+            for (Future<long[]> future : futures) {
+                long[] part = future.get();
+                int at = latencies.length;
+                latencies = Arrays.copyOf(latencies, at + part.length);
+                System.arraycopy(part, 0, latencies, at, part.length);
+            }
+            pool.shutdownNow();
+            Arrays.sort(latencies);
+            System.out.println("clients  requests  req/s  200s  304s  failed  p50 ms  p90 ms  p99 ms  max ms");
+            System.out.printf("%7d  %8d  %5.0f  %4d  %4d  %6d  %6.2f  %6.2f  %6.2f  %6.1f%n", clients,
+                    latencies.length, latencies.length / (double) seconds, ok.get(), notModified.get(), failed.get(),
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                    percentile(latencies, 1.0));
+        }
+    }
+
+    private static void runRound(int round, List<Channel> channels, ScheduleCache programMap, ExecutorService pool,
+                                 StandInServer server) throws Exception {
+        long requests = server.getRequests(), notModified = server.getNotModified();
+        long failures = server.getFailures(), bytes = server.getBytesSent();
+
+        long start = System.nanoTime();
+        ArrayList<Future<Long>> futures = new ArrayList<>(channels.size());
+        for (Channel channel : channels) {
+            futures.add(pool.submit(() -> {
+                long t = System.nanoTime();
+                Schedule schedule = UpdaterModel.fetchChannel(programMap, channel.id);
+                return schedule == null ? -1L : System.nanoTime() - t;
+            }));
+        }
+        long[] latencies = new long[futures.size()];
+        int ok = 0;
+        for (Future<Long> future : futures) {
+            long latency = future.get();
+            if (latency >= 0)
+                latencies[ok++] = latency;
+        }
+        long wall = System.nanoTime() - start;
+        latencies = Arrays.copyOf(latencies, ok);
+        Arrays.sort(latencies);
+
+        System.out.printf("%5d  %8d  %6d  %7.0f  %10.1f  %6.1f  %6.1f  %6.1f  %6.1f  %8d  %4d  %4d  %8d%n",
+                round, channels.size(), channels.size() - ok, millis(wall), ok / (wall / 1e9),
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 1.0), server.getRequests() - requests, server.getNotModified() - notModified,
+                server.getFailures() - failures, (server.getBytesSent() - bytes) / 1024);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return Double.NaN;
+        return millis(sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)]);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        HashMap<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Expected an option but got " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,99 @@
+package models;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading the API responses: the StAX readers in RadioParser against the DOM code path they replaced,
+ * on the recorded responses and on responses ten times their size.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"realistic", "10x"})
+    public String size;
+
+    private byte[] schedule;
+    private byte[] channels;
+    private final RadioParser parser = new RadioParser(null);
+
+    @Setup
+    public void setUp() {
+        schedule = Fixtures.load(Fixtures.SCHEDULE, Fixtures.scale(size));
+        channels = Fixtures.load(Fixtures.CHANNELS, Fixtures.scale(size));
+    }
+
+    @Benchmark
+    public Schedule readProgrammes() throws Exception {
+        return parser.readProgrammes(RadioParser.parse(new ByteArrayInputStream(schedule)));
+    }
+
+    @Benchmark
+    public ArrayList<Channel> readChannels() throws Exception {
+        ArrayList<Channel> result = new ArrayList<>();
+        parser.readChannels(result, RadioParser.parse(new ByteArrayInputStream(channels)), channel -> { });
+        return result;
+    }
+
+    /**
+     * The DOM code path RadioParser used before the StAX readers: build the whole document, then look every child
+     * tag of every episode up by name
+     */
+    @Benchmark
+    public Schedule readProgrammesDom() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(schedule));
+        Schedule.ScheduleBuilder programmes = new Schedule.ScheduleBuilder();
+        NodeList nodeList = doc.getElementsByTagName("scheduledepisode");
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            Element e = (Element) nodeList.item(i);
+            programmes.addProgramme(
+                    e.getElementsByTagName("title").item(0).getTextContent(),
+                    Instant.parse(e.getElementsByTagName("starttimeutc").item(0).getTextContent()).getEpochSecond(),
+                    Instant.parse(e.getElementsByTagName("endtimeutc").item(0).getTextContent()).getEpochSecond(),
+                    e.getElementsByTagName("imageurl").item(0) == null ? null
+                            : e.getElementsByTagName("imageurl").item(0).getTextContent(),
+                    e.getElementsByTagName("description").item(0) == null ? null
+                            : e.getElementsByTagName("description").item(0).getTextContent());
+        }
+        return programmes.buildSchedule();
+    }
+
+    @Benchmark
+    public ArrayList<Channel> readChannelsDom() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(channels));
+        ArrayList<Channel> result = new ArrayList<>();
+        NodeList nodeList = doc.getElementsByTagName("channel");
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            Element e = (Element) nodeList.item(i);
+            result.add(new Channel(e.getAttribute("id"), e.getAttribute("name")));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+package models;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for concurrent lookups of cached channels in programMap, alone and while another thread keeps replacing
+ * schedules the way the background refresh does.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramMapBenchmark {
+    private static final int CHANNELS = 50;
+
+    private final ScheduleCache programMap = new ScheduleCache();
+    private final UpdaterModel updater = new UpdaterModel();
+    private final String[] ids = new String[CHANNELS];
+    private Schedule[][] versions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Schedule schedule = Fixtures.scheduleAroundNow();
+        versions = new Schedule[CHANNELS][2];
+        for (int c = 0; c < CHANNELS; c++) {
+            ids[c] = String.valueOf(132 + c * 7);
+            Schedule.ScheduleBuilder changed = new Schedule.ScheduleBuilder();
+            for (Programme p : schedule)
+                changed.addProgramme(p.name() + " " + ids[c], p.start(), p.end(), p.imagePath(), p.description());
+            versions[c][0] = schedule;
+            versions[c][1] = changed.buildSchedule();
+            programMap.put(ids[c], schedule);
+        }
+        new ScheduleIndex(programMap);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Programme> getChannel() {
+        return updater.getChannel(programMap, ids[ThreadLocalRandom.current().nextInt(CHANNELS)]);
+    }
+
+    @Benchmark
+    @Group("refreshing")
+    @GroupThreads(3)
+    public List<Programme> getChannelWhileRefreshing() {
+        return updater.getChannel(programMap, ids[ThreadLocalRandom.current().nextInt(CHANNELS)]);
+    }
+
+    @Benchmark
+    @Group("refreshing")
+    @GroupThreads(1)
+    public Schedule refresh() {
+        int c = ThreadLocalRandom.current().nextInt(CHANNELS);
+        return programMap.put(ids[c], versions[c][ThreadLocalRandom.current().nextInt(2)]);
+    }
+}
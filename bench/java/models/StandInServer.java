@@ -0,0 +1,347 @@
+package models;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * StandInServer is a local stand-in for the SR API, used to measure the app without the real API. It answers the two
+ * resources RadioParser asks for, the channel list and a channel's scheduled episodes, with either recorded responses
+ * or synthetic ones built from the bundled fixtures. Every response can be delayed, can fail with 503 at a given rate
+ * and can be made larger. Schedules carry an ETag and are answered with 304 while they have not changed; at a given
+ * rate a channel's schedule changes between two requests.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class StandInServer implements AutoCloseable {
+    private static final Pattern CHANNEL_ID = Pattern.compile("[?&]channelid=([^&]+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Builder config;
+    private final byte[] channels;
+    private final byte[] schedule;
+    private final ConcurrentHashMap<String, Version> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    /**
+     * The current version of a channel's schedule
+     * @param number version number, 0 is the unchanged schedule
+     * @param eTag ETag of the version
+     * @param body plain response body
+     * @param gzipped gzipped response body
+     */
+    private record Version(int number, String eTag, byte[] body, byte[] gzipped) { }
+
+    private StandInServer(Builder config) throws IOException {
+        this.config = config;
+        this.channels = config.channelsXml != null ? config.channelsXml : syntheticChannels(config.channels);
+        this.schedule = config.scheduleXml != null ? config.scheduleXml : syntheticSchedule(config.payloadScale);
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stand-in-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", config.port), 256);
+        server.createContext("/api/v2/channels", exchange -> handle(exchange, this::channels));
+        server.createContext("/v2/scheduledepisodes", exchange -> handle(exchange, this::schedule));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return base URL of the server, to be used as ApiEndpoint
+     */
+    public URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    /**
+     * @return number of requests received
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of requests answered with 304
+     */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * @return number of requests answered with 503
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return number of body bytes sent, after compression
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Resource {
+        void respond(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Resource resource) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = config.latency.toMillis()
+                    + (config.jitter.isZero() ? 0 : random.nextLong(config.jitter.toMillis() + 1));
+            if (delay > 0)
+                Thread.sleep(delay);
+            if (random.nextDouble() < config.errorRate) {
+                failures.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            resource.respond(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void channels(HttpExchange exchange) throws IOException {
+        send(exchange, channels, gzip(channels), null);
+    }
+
+    private void schedule(HttpExchange exchange) throws IOException {
+        Matcher m = CHANNEL_ID.matcher(exchange.getRequestURI().getRawQuery() == null
+                ? "" : "?" + exchange.getRequestURI().getRawQuery());
+        if (!m.find()) {
+            exchange.sendResponseHeaders(400, -1);
+            return;
+        }
+        String id = m.group(1);
+        Version version = versions.compute(id, (key, current) -> {
+            if (current == null)
+                return version(key, 0);
+            if (config.changeRate > 0 && ThreadLocalRandom.current().nextDouble() < config.changeRate)
+                return version(key, current.number + 1);
+            return current;
+        });
+        if (version.eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            exchange.getResponseHeaders().set("ETag", version.eTag);
+            // the JDK server closes the connection after a response without a body unless the request was read
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        send(exchange, version.body, version.gzipped, version.eTag);
+    }
+
+    /**
+     * Build a version of a channel's schedule. Every version after the first renames the first programme.
+     */
+    private Version version(String id, int number) {
+        byte[] body = schedule;
+        if (number > 0) {
+            String xml = new String(schedule, StandardCharsets.UTF_8);
+            body = xml.replaceFirst("</title>", " (" + number + ")</title>").getBytes(StandardCharsets.UTF_8);
+        }
+        return new Version(number, "\"" + id + "-" + number + "\"", body, gzip(body));
+    }
+
+    private void send(HttpExchange exchange, byte[] body, byte[] gzipped, String eTag) throws IOException {
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean useGzip = config.gzip && accept != null && accept.contains("gzip");
+        byte[] out = useGzip ? gzipped : body;
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        if (useGzip)
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        if (eTag != null)
+            exchange.getResponseHeaders().set("ETag", eTag);
+        exchange.sendResponseHeaders(200, out.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(out);
+        }
+        bytesSent.addAndGet(out.length);
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A channel list with the given number of channels, in the format of the SR API
+     */
+    private static byte[] syntheticChannels(int count) {
+        StringBuilder xml = new StringBuilder(count * 400)
+                .append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<sr>\n  <channels>\n");
+        for (int i = 0; i < count; i++) {
+            int id = 1000 + i;
+            xml.append("    <channel id=\"").append(id).append("\" name=\"Kanal ").append(i + 1).append("\">\n")
+                    .append("      <image>https://static-cdn.sr.se/images/").append(id).append("/logo.png</image>\n")
+                    .append("      <tagline>Kanal ").append(i + 1).append(" från stand-in-servern</tagline>\n")
+                    .append("      <scheduleurl>https://api.sr.se/v2/scheduledepisodes?channelid=").append(id)
+                    .append("</scheduleurl>\n")
+                    .append("    </channel>\n");
+        }
+        return xml.append("  </channels>\n</sr>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The recorded schedule, inflated to the given scale and moved by whole days so that it covers yesterday, today
+     * and tomorrow as the app asks for
+     */
+    private static byte[] syntheticSchedule(int scale) {
+        return Fixtures.shift(Fixtures.load(Fixtures.SCHEDULE, scale),
+                Duration.ofDays(LocalDate.now(ZoneOffset.UTC).toEpochDay() - Fixtures.RECORDED_ON.toEpochDay()));
+    }
+
+    /**
+     * @return Builder with the default settings: an ephemeral port, 300 channels, no latency, no errors, no changes,
+     * the schedule at its recorded size and gzip enabled
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder for the server settings
+     */
+    public static class Builder {
+        private int port;
+        private int channels = 300;
+        private Duration latency = Duration.ZERO;
+        private Duration jitter = Duration.ZERO;
+        private double errorRate;
+        private double changeRate;
+        private int payloadScale = 1;
+        private boolean gzip = true;
+        private byte[] channelsXml;
+        private byte[] scheduleXml;
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param channels number of channels in the synthetic channel list
+         */
+        public Builder channels(int channels) {
+            this.channels = channels;
+            return this;
+        }
+
+        /**
+         * @param latency fixed delay before every response
+         * @param jitter upper bound of an additional random delay
+         */
+        public Builder latency(Duration latency, Duration jitter) {
+            this.latency = latency;
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * @param errorRate fraction of requests, 0 to 1, that are answered with 503
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * @param changeRate chance, 0 to 1, that a channel's schedule has changed when it is asked for again
+         */
+        public Builder changeRate(double changeRate) {
+            this.changeRate = changeRate;
+            return this;
+        }
+
+        /**
+         * @param payloadScale how many copies of the recorded episodes every synthetic schedule has
+         */
+        public Builder payloadScale(int payloadScale) {
+            this.payloadScale = payloadScale;
+            return this;
+        }
+
+        public Builder gzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        /**
+         * Serve recorded responses instead of synthetic ones
+         * @param channelsXml body of a recorded channel list response
+         * @param scheduleXml body of a recorded scheduled episodes response, served for every channel
+         */
+        public Builder recorded(byte[] channelsXml, byte[] scheduleXml) {
+            this.channelsXml = channelsXml;
+            this.scheduleXml = scheduleXml;
+            return this;
+        }
+
+        /**
+         * Start the server
+         * @return the running server
+         * @throws IOException if the port cannot be bound
+         */
+        public StandInServer start() throws IOException {
+            return new StandInServer(this);
+        }
+    }
+
+    /**
+     * Run the server on its own, e.g. to point the app at it with -Dradioinfo.apiUrl.
+     * Arguments: [port] [channels] [latency ms] [error rate]
+     */
+    public static void main(String[] args) throws IOException {
+        Builder builder = builder().port(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        if (args.length > 1)
+            builder.channels(Integer.parseInt(args[1]));
+        if (args.length > 2)
+            builder.latency(Duration.ofMillis(Long.parseLong(args[2])), Duration.ZERO);
+        if (args.length > 3)
+            builder.errorRate(Double.parseDouble(args[3]));
+        StandInServer server = builder.start();
+        System.out.println("SR API stand-in listening on " + server.uri());
+    }
+}
@@ -0,0 +1,110 @@
+package models;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import views.ScheduleTableModel;
+
+import javax.swing.JTable;
+import javax.swing.table.TableRowSorter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for getting a cached schedule on screen: UpdaterModel picking the programmes to show for a cached
+ * channel, and the table model, row sorter and JTable that View.configureTable updates. The View itself needs a display, so the
+ * benchmark builds the same table headless and calls what configureTable calls. It runs on the benchmark thread
+ * instead of the EDT, which only leaves out the hand-over to the EDT.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TableBenchmark {
+    private final ScheduleCache programMap = new ScheduleCache();
+    private final UpdaterModel updater = new UpdaterModel();
+    private ScheduleTableModel tableModel;
+    private JTable table;
+    private List<Programme> first;
+    private List<Programme> second;
+    private List<Programme> refreshed;
+    private boolean flip;
+
+    @Setup
+    public void setUp() {
+        Schedule schedule = Fixtures.scheduleAroundNow();
+        programMap.put("132", schedule);
+        first = updater.getChannel(programMap, "132");
+
+        Schedule.ScheduleBuilder other = new Schedule.ScheduleBuilder();
+        Schedule.ScheduleBuilder changed = new Schedule.ScheduleBuilder();
+        for (int i = 0; i < schedule.size(); i++) {
+            Programme p = schedule.get(i);
+            other.addProgramme(p.name(), p.start() + 1800, p.end() + 1800, p.imagePath(), p.description());
+            changed.addProgramme(i == schedule.size() / 2 ? p.name() + " (repris)" : p.name(),
+                    p.start(), p.end(), p.imagePath(), p.description());
+        }
+        programMap.put("164", other.buildSchedule());
+        second = updater.getChannel(programMap, "164");
+        refreshed = UpdaterModel.window(changed.buildSchedule());
+
+        tableModel = new ScheduleTableModel(List.of());
+        table = new JTable(tableModel);
+        TableRowSorter<ScheduleTableModel> sorter = new TableRowSorter<>(tableModel);
+        for (int col = 0; col < tableModel.getColumnCount(); col++)
+            sorter.setComparator(col, ScheduleTableModel.comparator(col));
+        table.setRowSorter(sorter);
+        table.removeColumn(table.getColumnModel().getColumn(0));
+        table.removeColumn(table.getColumnModel().getColumn(0));
+    }
+
+    /**
+     * UpdaterModel.getChannel on a cached channel, which is the time window of the cached schedule
+     */
+    @Benchmark
+    public List<Programme> createTable() {
+        return updater.getChannel(programMap, "132");
+    }
+
+    /**
+     * Switch the table between two channels, as configureTable does when another channel is selected
+     */
+    @Benchmark
+    public void configureTableSwitchChannel(Blackhole bh) {
+        flip = !flip;
+        tableModel.setProgrammes(flip ? first : second);
+        readVisibleCells(bh);
+    }
+
+    /**
+     * Show a refreshed schedule of the same channel in which one programme changed
+     */
+    @Benchmark
+    public void configureTableRefresh(Blackhole bh) {
+        flip = !flip;
+        tableModel.setProgrammes(flip ? first : refreshed);
+        readVisibleCells(bh);
+    }
+
+    /**
+     * Read every cell the table shows, through the sorter, as the cell renderers would
+     */
+    private void readVisibleCells(Blackhole bh) {
+        for (int row = 0; row < table.getRowCount(); row++)
+            for (int col = 0; col < table.getColumnCount(); col++)
+                bh.consume(table.getValueAt(row, col));
+    }
+}
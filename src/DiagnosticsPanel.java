@@ -0,0 +1,109 @@
+import models.Histogram;
+import models.Metrics;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Map;
+
+/**
+ * Panel that shows the current metrics: one table with the timing and size histograms, one with the counters and
+ * gauges, and the stacks of the most recent EDT stalls. The tables are refreshed every second while the panel is shown. Times are shown in milliseconds.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class DiagnosticsPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] HISTOGRAM_HEADER = {"Mätvärde", "Enhet", "Antal", "Medel", "p50", "p90", "p99", "Max"};
+    private static final String[] VALUE_HEADER = {"Mätvärde", "Värde"};
+
+    private final DefaultTableModel histograms = readOnlyModel(HISTOGRAM_HEADER);
+    private final DefaultTableModel values = readOnlyModel(VALUE_HEADER);
+    private final JTextArea stalls = new JTextArea();
+    private final Timer timer = new Timer(1000, e -> refresh());
+
+    /**
+     * Create the panel, it starts refreshing once it is shown
+     */
+    public DiagnosticsPanel() {
+        super(new BorderLayout());
+        JCheckBox enabled = new JCheckBox("Mät", Metrics.isEnabled());
+        enabled.addActionListener(e -> Metrics.setEnabled(enabled.isSelected()));
+        JButton reset = new JButton("Nollställ");
+        reset.addActionListener(e -> {
+            Metrics.reset();
+            refresh();
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(enabled);
+        buttons.add(reset);
+
+        stalls.setEditable(false);
+        stalls.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        JSplitPane lower = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(new JTable(values)), new JScrollPane(stalls));
+        lower.setResizeWeight(0.5);
+        JSplitPane tables = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(new JTable(histograms)), lower);
+        tables.setResizeWeight(0.45);
+        add(buttons, BorderLayout.PAGE_START);
+        add(tables, BorderLayout.CENTER);
+        setPreferredSize(new Dimension(760, 680));
+        refresh();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Read the metrics again and replace the rows of both tables
+     */
+    private void refresh() {
+        histograms.setRowCount(0);
+        for (Map.Entry<String, Histogram.Snapshot> entry : Metrics.histograms().entrySet()) {
+            Histogram.Snapshot h = entry.getValue();
+            boolean nanos = h.getUnit().equals("ns");
+            histograms.addRow(new Object[]{entry.getKey(), nanos ? "ms" : h.getUnit(), h.getCount(),
+                    format(h.getMean(), nanos), format(h.getP50(), nanos), format(h.getP90(), nanos),
+                    format(h.getP99(), nanos), format(h.getMax(), nanos)});
+        }
+        values.setRowCount(0);
+        Metrics.values().forEach((name, value) -> values.addRow(new Object[]{name, value}));
+
+        EdtWatchdog watchdog = EdtWatchdog.get();
+        if (watchdog == null) {
+            stalls.setText("EDT-vakten är inte igång");
+        } else {
+            StringBuilder text = new StringBuilder("Senaste EDT-stopp (" + watchdog.getStallCount() + " totalt):\n");
+            watchdog.getRecentStalls().forEach(stall -> text.append(stall).append('\n'));
+            String next = text.toString();
+            if (!next.equals(stalls.getText())) {
+                stalls.setText(next);
+                stalls.setCaretPosition(0);
+            }
+        }
+    }
+
+    private static String format(double value, boolean nanos) {
+        return nanos ? String.format("%.2f", value / 1e6) : String.format("%.0f", value);
+    }
+
+    private static DefaultTableModel readOnlyModel(String[] header) {
+        return new DefaultTableModel(header, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+}
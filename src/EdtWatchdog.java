@@ -0,0 +1,155 @@
+import models.Histogram;
+import models.Metrics;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.InvocationEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EdtWatchdog detects stalls of the event dispatch thread. It pushes an event queue that notes when every event starts
+ * and finishes dispatching, and a daemon thread checks it a few times per threshold. When an event has been
+ * dispatching for longer than the threshold, the stack of the EDT is captured once for that event, the stall is
+ * counted in the edt.stalls gauge, logged, and kept among the most recent stalls for the diagnostics panel. The
+ * dispatch time of every event is recorded in the edt.dispatch histogram.
+ * The threshold is 100 ms by default and can be set with -Dradioinfo.edtStallMillis.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public final class EdtWatchdog {
+    private static final System.Logger LOG = System.getLogger(EdtWatchdog.class.getName());
+    private static final int KEPT_STALLS = 20;
+    private static final Histogram DISPATCH_TIME = Metrics.timer("edt.dispatch");
+
+    private static EdtWatchdog installed;
+
+    private final long thresholdNanos;
+    private final ArrayDeque<Stall> stalls = new ArrayDeque<>();
+    private final AtomicLong stallCount = new AtomicLong();
+
+    private volatile Thread edt;
+    private volatile AWTEvent current;
+    private volatile long dispatchStart;
+    private AWTEvent reported;
+
+    /**
+     * A dispatch that took longer than the threshold
+     * @param millis how long the event had been dispatching when it was caught
+     * @param event description of the event, for invocation events the task that was run
+     * @param stack stack of the EDT when the stall was caught
+     */
+    public record Stall(long millis, String event, StackTraceElement[] stack) {
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder().append(millis).append(" ms in ").append(event).append('\n');
+            for (StackTraceElement frame : stack)
+                sb.append("    at ").append(frame).append('\n');
+            return sb.toString();
+        }
+    }
+
+    private EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+    }
+
+    /**
+     * Install the watchdog, once. Can be called from any thread.
+     * @return the installed watchdog
+     */
+    public static synchronized EdtWatchdog install() {
+        if (installed == null) {
+            installed = new EdtWatchdog(Long.getLong("radioinfo.edtStallMillis", 100));
+            installed.start();
+            Metrics.gauge("edt.stalls", installed::getStallCount);
+        }
+        return installed;
+    }
+
+    /**
+     * @return the installed watchdog, or null if it has not been installed
+     */
+    public static synchronized EdtWatchdog get() {
+        return installed;
+    }
+
+    /**
+     * @return number of stalls caught since the start
+     */
+    public long getStallCount() {
+        return stallCount.get();
+    }
+
+    /**
+     * @return the most recent stalls, newest first
+     */
+    public synchronized List<Stall> getRecentStalls() {
+        return new ArrayList<>(stalls);
+    }
+
+    private void start() {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EventQueue() {
+            @Override
+            protected void dispatchEvent(AWTEvent event) {
+                edt = Thread.currentThread();
+                long start = System.nanoTime();
+                dispatchStart = start;
+                current = event;
+                try {
+                    super.dispatchEvent(event);
+                } finally {
+                    // Also after a nested event of a modal dialog: the outer event is then waiting, not stalling
+                    current = null;
+                    DISPATCH_TIME.record(System.nanoTime() - start);
+                }
+            }
+        });
+
+        Thread checker = new Thread(this::check, "edt-watchdog");
+        checker.setDaemon(true);
+        checker.setPriority(Thread.MAX_PRIORITY);
+        checker.start();
+    }
+
+    private void check() {
+        long period = Math.max(1, thresholdNanos / 4_000_000);
+        while (true) {
+            try {
+                Thread.sleep(period);
+            } catch (InterruptedException e) {
+                return;
+            }
+            AWTEvent event = current;
+            long elapsed = System.nanoTime() - dispatchStart;
+            Thread thread = edt;
+            if (event == null || thread == null || event == reported || elapsed < thresholdNanos)
+                continue;
+            StackTraceElement[] stack = thread.getStackTrace();
+            if (event != current)
+                continue;
+            reported = event;
+            Stall stall = new Stall(elapsed / 1_000_000, describe(event), stack);
+            stallCount.incrementAndGet();
+            synchronized (this) {
+                stalls.addFirst(stall);
+                if (stalls.size() > KEPT_STALLS)
+                    stalls.removeLast();
+            }
+            LOG.log(System.Logger.Level.WARNING, "EDT stalled: {0}", stall);
+        }
+    }
+
+    private static String describe(AWTEvent event) {
+        if (event instanceof InvocationEvent) {
+            String s = event.paramString();
+            int runnable = s.indexOf("runnable=");
+            if (runnable >= 0)
+                return s.substring(runnable + "runnable=".length()).split(",")[0];
+        }
+        return event.getClass().getSimpleName() + "[" + event.paramString() + "]";
+    }
+}
@@ -1,11 +1,63 @@
+import models.Metrics;
+import models.ScheduleServer;
+import models.ScheduleService;
+import models.ScheduleSnapshot;
+import models.TaskExecutor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+
 /**
  * Program RadioInfo that gathers data about SR radio channels from their API and displays them to the user.
+ * Started with --headless, or -Dradioinfo.headless=true, it shows no GUI and instead serves the schedules as JSON on
+ * a local HTTP port, radioinfo.port (default 8080), bound to radioinfo.host (default 127.0.0.1).
  *
  * @author Alireza Ramezani id19ari
  * @version 2.0
  */
 public class RadioInfo {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (Boolean.getBoolean("radioinfo.headless") || Arrays.asList(args).contains("--headless")) {
+            serve();
+            return;
+        }
+        EdtWatchdog.install();
         new RadioInfoController();
     }
+
+    /**
+     * Run the schedule service without a GUI and serve it over HTTP. The server threads are daemons, the thread
+     * that accepts connections keeps the program running.
+     * @throws IOException if the port cannot be bound
+     */
+    private static void serve() throws IOException {
+        ScheduleService service = new ScheduleService();
+        if (service.loadSnapshot(ScheduleSnapshot.DEFAULT_FILE)) {
+            TaskExecutor.shared().execute(TaskExecutor.Priority.BACKGROUND, service::refreshChannels);
+        } else if (service.fetchChannels(ch -> { }) == null) {
+            System.err.println("Could not fetch the channel list, retrying in the background");
+            service.every(Duration.ofMinutes(1), () -> {
+                if (service.getChannels() == null)
+                    service.fetchChannels(ch -> { });
+            });
+        }
+        service.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                service.saveSnapshot(ScheduleSnapshot.DEFAULT_FILE);
+            } catch (IOException ignored) {
+            }
+        }));
+        service.registerMetrics();
+        Metrics.registerMBean();
+
+        InetSocketAddress address = new InetSocketAddress(System.getProperty("radioinfo.host", "127.0.0.1"),
+                Integer.getInteger("radioinfo.port", 8080));
+        ScheduleServer server = new ScheduleServer(service, address,
+                Integer.getInteger("radioinfo.server.threads", Runtime.getRuntime().availableProcessors()));
+        System.out.println("Serving schedules on http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/api/channels");
+    }
 }
@@ -1,137 +1,279 @@
 import models.*;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * RadioInfoController is the controller class in the MVC structure of RadioInfo.
- * The class handles all necessary logic for fetching data from the SR API while also handling data caching
- * and updating fetched data in the background. The controller also contains all the necessary listeners to handle
- * changes in the GUI
+ * The class connects the Swing GUI to the ScheduleService, which fetches data from the SR API, caches it and keeps it
+ * up to date in the background. The controller also contains all the necessary listeners to handle changes in the GUI
  *
  * @author Alireza Ramezani, id19ari
  * @version 3.0
  */
 public class RadioInfoController {
+    /** Selections closer together than this mean the user is browsing through the list */
+    private static final long BROWSING_MILLIS = 150;
+    private static final Metrics.Counter SUPERSEDED = Metrics.counter("select.superseded");
+    private static final Metrics.Counter DROPPED = Metrics.counter("select.dropped");
+
     private View gui;
-    private final ConcurrentHashMap<String, ArrayList<Programme>> programMap = new ConcurrentHashMap<>();
-    private String currentChannel;
+    private final ScheduleService service = new ScheduleService();
+    private final ScheduleCache programMap = service.getCache();
+    private final Prefetcher prefetcher = new Prefetcher();
+    private final BulkWarmer warmer = new BulkWarmer(Integer.getInteger("radioinfo.warm.concurrency", 4),
+            Double.parseDouble(System.getProperty("radioinfo.warm.rate", "5")), 4, prefetcher::isUserWaiting);
+    private final TaskExecutor tasks = TaskExecutor.shared();
+    private final DefaultListModel<Channel> listModel = new DefaultListModel<>();
+    /** The channel shown in the table. Only written on the EDT. */
+    private volatile String currentChannel;
+    /** Generation of the latest channel selection, results of older selections are dropped */
+    private final AtomicLong selection = new AtomicLong();
+    /** The fetch of the latest selection, only used on the EDT */
+    private CompletableFuture<List<Programme>> pendingSelection;
+    private long lastSelectionAt;
+    private final StartupTimings timings = new StartupTimings();
+    private final CompletableFuture<Void> guiReady;
 
     /**
-     * Fetch all channel and start the GUI through SwingUtilities. Start the background thread responsible for
-     * automatic updates of the cache and put the thread to sleep for an hour.
+     * Start the program as an asynchronous pipeline. The GUI is built on the EDT right away and shows a loading state
+     * while the channels are loaded, either from the snapshot of the previous run or from the API. Channels fetched from
+     * the API are added to the list as they are parsed, and the schedule of the first channel is fetched while the GUI
+     * is still being built. When both the GUI and the channels are ready the first channel is selected. Start the
+     * scheduler responsible for automatic updates of the cache.
      */
     public RadioInfoController() {
-        ArrayList<Channel> channels = new RadioParser().fetchChannels();
-        if (channels==null) {
-            displayError("Anslutningsfel när kanalerna skulle hämtas");
-            return;
+        boolean warm = service.loadSnapshot(ScheduleSnapshot.DEFAULT_FILE);
+        if (warm) {
+            for (Channel ch : service.getChannels()) {
+                listModel.addElement(ch);
+            }
         }
+        timings.mark("snapshot");
 
-        DefaultListModel<Channel> listModel = new DefaultListModel<>();
+        guiReady = CompletableFuture.runAsync(() -> {
+            gui = new View(listModel, this);
+            gui.setLoading(!warm);
+            timings.mark("gui");
+        }, SwingUtilities::invokeLater);
 
-        for (Channel ch : channels) {
-            listModel.addElement(ch);
+        CompletableFuture<List<Channel>> channelsReady;
+        if (warm) {
+            channelsReady = CompletableFuture.completedFuture(service.getChannels());
+        } else {
+            channelsReady = tasks.submit(TaskExecutor.Priority.INTERACTIVE, this::streamChannels);
         }
 
-        SwingUtilities.invokeLater(()-> {
-            gui = new View(listModel, this);
-        });
+        channelsReady.thenAcceptBoth(guiReady, (chs, ignored) -> SwingUtilities.invokeLater(() -> {
+            gui.setLoading(false);
+            if (chs == null) {
+                gui.configureErrorDialog("Anslutningsfel när kanalerna skulle hämtas");
+                return;
+            }
+            timings.mark("interactive");
+            gui.selectFirstChannel();
+            if (Boolean.getBoolean("radioinfo.warmAll"))
+                warmAllChannels();
+        }));
 
+        registerMetrics();
+        if (warm)
+            revalidate();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveSnapshot));
         autoUpdate();
     }
 
     /**
-     * Starts the background thread that keeps updating all the cached channels in the background, once every 60 min.
-     * Since only the already fetched channels are to be updated, this method cannot make use of the
-     * Parser.fetchChannels() method but rather loops through the cache and updates the channels one by one.
-     * When all channels are updated, the current channel is then also updated in the GUI
+     * Fetch all channels from the API and add each one to the list model as soon as it has been parsed. The schedule
+     * of the first channel is fetched in the background as soon as that channel is known.
+     * @return all channels, or null if the fetch failed
      */
-    private void autoUpdate() {
-        Thread refreshCache = new Thread(() -> {
-            while(true) {
-                try {
-                    Thread.sleep(1000*60*60);
-                    SwingWorker<Void, Void> sw = new SwingWorker() {
-                        DefaultTableModel table;
-                        @Override
-                        protected Object doInBackground() {
-                            synchronized (programMap) {
-                                for (String key : programMap.keySet()) {
-                                    new RadioParser().updateChannel(key, programMap);
-                                }
-                                table = new UpdaterModel().channelWorker(programMap, currentChannel);
-                                return null;
-                            }
-                        }
-                        @Override
-                        protected void done() {
-                            super.done();
-                            configureTable(table);
-                        }
-                    };
-                    sw.execute();
-                } catch (InterruptedException ie) {
-                    displayError("Automatic cache update failed");
-                }
+    private List<Channel> streamChannels() {
+        AtomicBoolean first = new AtomicBoolean(true);
+        List<Channel> fetched = service.fetchChannels(ch -> {
+            if (first.getAndSet(false)) {
+                timings.mark("firstChannel");
+                tasks.execute(TaskExecutor.Priority.INTERACTIVE, () -> {
+                    service.getSchedule(ch.id);
+                    timings.mark("firstSchedule");
+                });
+            }
+            SwingUtilities.invokeLater(() -> listModel.addElement(ch));
+        });
+        timings.mark("channels");
+        return fetched;
+    }
+
+    /**
+     * @return index for querying what is on across all cached channels
+     */
+    public ScheduleIndex getScheduleIndex() {
+        return service.getScheduleIndex();
+    }
+
+    /**
+     * Expose the state of the caches and the prefetcher as gauges and register the metrics MBean
+     */
+    private void registerMetrics() {
+        service.registerMetrics();
+        Metrics.gauge("image.cache.memoryHits", () -> ImageCache.shared().getMemoryHits());
+        Metrics.gauge("image.cache.diskHits", () -> ImageCache.shared().getDiskHits());
+        Metrics.gauge("image.cache.misses", () -> ImageCache.shared().getMisses());
+        Metrics.gauge("prefetch.count", prefetcher::getPrefetches);
+        Metrics.gauge("prefetch.hits", prefetcher::getHits);
+        Metrics.gauge("breaker.open", () -> ApiClient.shared().getBreakerStates().values().stream()
+                .filter(state -> state == CircuitBreaker.State.OPEN).count());
+        Metrics.registerMBean();
+    }
+
+    /**
+     * Revalidate the channels loaded from the snapshot against the API as a background task. The channel list is
+     * only replaced in the GUI if the channels have changed. The schedules are refreshed by the RefreshScheduler,
+     * which sees how old they are.
+     */
+    private void revalidate() {
+        tasks.execute(TaskExecutor.Priority.BACKGROUND, () -> {
+            List<Channel> fresh = service.refreshChannels();
+            if (fresh != null) {
+                SwingUtilities.invokeLater(() -> {
+                    listModel.clear();
+                    listModel.addAll(fresh);
+                });
             }
         });
-        refreshCache.start();
+    }
+
+    /**
+     * Start keeping the cached channels up to date. The service refreshes every channel on its own timetable, stale
+     * channels are also revalidated when they are shown, and as soon as the cached schedule of the current channel has
+     * changed it is also updated in the GUI. Every five minutes the time window of the current channel is moved
+     * forward from the cache alone, and every half hour the snapshot is saved.
+     */
+    private void autoUpdate() {
+        programMap.addListener((id, previous, current, diff) -> {
+            if (previous != null && current != null)
+                channelRefreshed(id);
+        });
+        service.start();
+        service.every(Duration.ofMinutes(5), () -> {
+            String current = currentChannel;
+            if (current != null)
+                channelRefreshed(current);
+        });
+        service.every(Duration.ofMinutes(30), this::saveSnapshot);
+    }
+
+    /**
+     * Called from a background thread when the cached schedule of a channel has changed. If it is the current
+     * channel, the GUI table is updated with the new programmes.
+     * @param id Channel id
+     */
+    private void channelRefreshed(String id) {
+        if (id.equals(currentChannel)) {
+            List<Programme> programmes = service.peekSchedule(id);
+            if (programmes != null) {
+                SwingUtilities.invokeLater(() -> {
+                    // the user may have selected another channel in the meantime
+                    if (id.equals(currentChannel))
+                        gui.configureTable(programmes);
+                });
+            }
+        }
+    }
+
+    /**
+     * Write the channels and the cached schedules to the snapshot file. Failing to write only means the next startup
+     * has to wait for the API.
+     */
+    private void saveSnapshot() {
+        try {
+            service.saveSnapshot(ScheduleSnapshot.DEFAULT_FILE);
+        } catch (IOException ignored) {
+        }
     }
 
     /**
      * Fetches programme info. Although since the title and description is already saved in the table-model, the only
      * new information that it fetches is the image based on a given image-path.
-     * When image is fetched, it configures a JDialog in the gui.
+     * When image is fetched and wrapped in an icon, as an interactive task, it configures a JDialog in the gui.
      * @param imagePath API path to fetch the image
      * @param description The programme description
      * @param name The programme title
      * @param selRow The selected row in the table-model, used to make sure the row isn't the table header.
      */
     public void getProgrammeInfo(String imagePath, String description, String name, int selRow) {
-        SwingWorker<Void, Void> sw = new SwingWorker<>() {
-            BufferedImage image;
-            @Override
-            protected Void doInBackground() {
-                image = new ProgrammeSelector().getInfo(imagePath, selRow);
-                return null;
-            }
-            @Override
-            protected void done() {
-                super.done();
-                configureDetails(image, name, description);
+        tasks.submit(TaskExecutor.Priority.INTERACTIVE, () -> {
+            prefetcher.markUsed(imagePath);
+            prefetcher.userRequestStarted();
+            try {
+                BufferedImage img = new ProgrammeSelector().getInfo(imagePath, selRow);
+                return img == null ? null : (Icon) new ImageIcon(img);
+            } finally {
+                prefetcher.userRequestFinished();
             }
-        };
-        sw.execute();
+        }).whenComplete((image, e) -> SwingUtilities.invokeLater(() -> configureDetails(image, name, description)));
     }
 
     /**
      * Fetches programmes for the selected channel based on the channel id, and updates the GUI table with all the
-     * fetched programmes
+     * fetched programmes. Only the latest selection wins: a new selection cancels the fetch of the one before, which
+     * interrupts its request if it has started, and a result that arrives after a newer selection is dropped before
+     * it reaches the EDT. While the user browses quickly through the list, uncached channels are only fetched once the
+     * selection has rested for a moment, so that the channels scrolled past cost no requests at all.
+     * Must be called on the EDT.
      * @param id Channel id
      */
     public void selectChannel(String id) {
-        SwingWorker<Void, Void> sw = new SwingWorker<>() {
-            DefaultTableModel table;
-            @Override
-            protected Void doInBackground() {
-                synchronized (programMap) {
-                    ChannelSelector selector = new ChannelSelector();
-                    table = selector.selectChannel(id, programMap);
-                    currentChannel = selector.getCurrentChannel();
+        long generation = selection.incrementAndGet();
+        if (pendingSelection != null && pendingSelection.cancel(true))
+            SUPERSEDED.increment();
+        long now = System.currentTimeMillis();
+        boolean browsing = now - lastSelectionAt < BROWSING_MILLIS;
+        lastSelectionAt = now;
+
+        CompletableFuture<List<Programme>> fetch = tasks.submitInterruptible(TaskExecutor.Priority.INTERACTIVE, () -> {
+            if (browsing && !programMap.containsKey(id)) {
+                try {
+                    Thread.sleep(BROWSING_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     return null;
                 }
             }
-            @Override
-            protected void done() {
-                super.done();
-                configureTable(table);
+            prefetcher.markUsed(id);
+            prefetcher.userRequestStarted();
+            try {
+                List<Programme> programmes = service.getSchedule(id);
+                if (selection.get() == generation)
+                    service.viewed(id);
+                return programmes;
+            } finally {
+                prefetcher.userRequestFinished();
             }
-        };
-        sw.execute();
+        });
+        pendingSelection = fetch;
+        fetch.whenComplete((programmes, e) -> {
+            if (fetch.isCancelled())
+                return;
+            if (selection.get() != generation) {
+                DROPPED.increment();
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (selection.get() != generation) {
+                    DROPPED.increment();
+                    return;
+                }
+                currentChannel = id;
+                configureTable(programmes);
+            });
+        });
     }
 
     /**
@@ -139,40 +281,78 @@ public class RadioInfoController {
      * GUI
      */
     public void updateChannel() {
-        SwingWorker<Void, Void> sw = new SwingWorker<>() {
-            DefaultTableModel table;
-            @Override
-            protected Void doInBackground() {
-                synchronized (programMap) {
-                    table = new UpdaterModel().channelWorker(programMap, currentChannel);
-                    return null;
-                }
-            }
-            @Override
-            protected void done() {
-                super.done();
-                configureTable(table);
+        String id = currentChannel;
+        long generation = selection.get();
+        if (id == null)
+            return;
+        tasks.submit(TaskExecutor.Priority.INTERACTIVE, () -> {
+            prefetcher.userRequestStarted();
+            try {
+                return service.refreshSchedule(id);
+            } finally {
+                prefetcher.userRequestFinished();
             }
-        };
-        sw.execute();
+        }).whenComplete((programmes, e) -> SwingUtilities.invokeLater(() -> {
+            if (selection.get() == generation)
+                configureTable(programmes);
+            else
+                DROPPED.increment();
+        }));
+    }
+
+    /**
+     * Fetch the schedules of all channels that are not cached yet in the background, politely rate limited, and show
+     * the progress in the GUI. Started from the menu, or right after startup with -Dradioinfo.warmAll=true.
+     */
+    public void warmAllChannels() {
+        List<Channel> chs = service.getChannels();
+        if (chs == null)
+            return;
+        warmer.warm(chs, programMap, progress -> SwingUtilities.invokeLater(() -> gui.setWarmProgress(progress)))
+                .thenRun(this::saveSnapshot);
+    }
+
+    /**
+     * Stop warming the channels, the channels fetched so far stay cached
+     */
+    public void cancelWarmAllChannels() {
+        warmer.cancel();
+    }
+
+    /**
+     * Search the title and description of the programmes of every cached channel. Fast enough to be called on the EDT
+     * for every keystroke.
+     * @param query words to search for, the last one may be incomplete
+     * @return the first 100 matching programmes, ordered by start time
+     */
+    public List<SearchIndex.Hit> search(String query) {
+        return service.search(query, 100);
+    }
+
+    /**
+     * Speculatively fetch the schedules of channels the user is likely to select next, in the background
+     * @param ids Channel ids, most likely first
+     */
+    public void prefetchChannels(List<String> ids) {
+        prefetcher.prefetchChannels(ids, programMap);
     }
 
     /**
-     * Display JDialog with error-message in the gui
-     * @param msg String with the error message
+     * Speculatively fetch the images of the programmes currently visible in the table, in the background
+     * @param imagePaths API paths of the images
      */
-    private void displayError(String msg) {
-        SwingUtilities.invokeLater(()-> gui.configureErrorDialog(msg));
+    public void prefetchImages(List<String> imagePaths) {
+        prefetcher.prefetchImages(imagePaths);
     }
 
     /**
      * Configures the JTable in the GUI with new programmes
-     * !SHOULD NOT BE USED OUTSIDE A SWING-WORKER!
-     * @param tableModel The updated table-model that should be displayed in the gui
+     * !SHOULD ONLY BE CALLED ON THE EDT!
+     * @param programmes The programmes that should be displayed in the gui, null if they could not be fetched
      */
-    private void configureTable(DefaultTableModel tableModel) {
-        if (tableModel != null) {
-            gui.configureTable(tableModel);
+    private void configureTable(List<Programme> programmes) {
+        if (programmes != null && !programmes.isEmpty()) {
+            gui.configureTable(programmes);
         } else {
             gui.configureErrorDialog("Fel när kanaler eller kanalernas innehåll skulle hämtas");
         }
@@ -180,12 +360,12 @@ public class RadioInfoController {
 
     /**
      * Configures the JDialog with program details
-     * !SHOULD NOT BE USED OUTSIDE A SWING-WORKER!
-     * @param img buffered image
+     * !SHOULD ONLY BE CALLED ON THE EDT!
+     * @param img icon with the image
      * @param t programme title
      * @param description programme description
      */
-    private void configureDetails(BufferedImage img, String t, String description) {
+    private void configureDetails(Icon img, String t, String description) {
         if (t != null && img != null && description != null) {
             gui.configureDetailDialog(img, t, description);
         } else {
@@ -1,11 +1,24 @@
+import models.BulkWarmer;
 import models.Channel;
+import models.Histogram;
+import models.Metrics;
+import models.Programme;
+import models.SearchIndex;
+import views.ScheduleTableModel;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class GUI builds the program graphical user interface and contains all the necessary components for the GUI to work
@@ -15,10 +28,18 @@ import java.awt.image.BufferedImage;
  * @version 2.0
  */
 public class View {
+    private static final Histogram CONFIGURE_TABLE_TIME = Metrics.timer("edt.configureTable");
+
     private final JFrame frame;
     private JTable jt;
-    private DefaultTableModel tableModel;
+    private final ScheduleTableModel tableModel = new ScheduleTableModel(List.of());
     private RadioInfoController controller;
+    private JList<Channel> channelList;
+    private final JLabel status = new JLabel(" ");
+    private JDialog detailDialog;
+    private JLabel detailImage;
+    private JLabel detailTitle;
+    private JTextArea detailDescription;
 
     /**
      * Create the GUI and configure the frame and menubar, and also the table headings.
@@ -27,14 +48,6 @@ public class View {
     public View(DefaultListModel<Channel> listModel, RadioInfoController controller) {
         this.controller = controller;
         frame = new JFrame("Radio Info");
-        String[] header = {"Beskrivning", "Bild", "Program", "Start", "Slut"};
-        tableModel = new DefaultTableModel(header, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                //all cells false
-                return false;
-            }
-        };
         configureMenu();
         configureFrame(listModel);
     }
@@ -52,72 +65,252 @@ public class View {
     }
 
     /**
-     * Configure JDialog popup to display extra information about a programme to users
-     * @param img Buffered Image to display
+     * Show the JDialog popup with extra information about a programme. The dialog is assembled the first time only
+     * and reused afterwards, so showing it again just swaps its contents. The icon is prepared off the EDT.
+     * @param img Icon with the image, already scaled
      * @param t String containing the programme title
      * @param description String containing the programme description
      */
-    public void configureDetailDialog(BufferedImage img, String t, String description) {
-        JDialog dialog = new JDialog(frame, "Mer info");
-        JLabel image = new JLabel(new ImageIcon(img));
-        JLabel title = new JLabel(t);
-        JTextArea desc = new JTextArea(description);
+    public void configureDetailDialog(Icon img, String t, String description) {
+        if (detailDialog == null)
+            createDetailDialog();
+        detailImage.setIcon(img);
+        detailTitle.setText(t);
+        detailDescription.setText(description);
+        detailDescription.setCaretPosition(0);
+        detailDialog.setVisible(true);
+        detailDialog.toFront();
+    }
+
+    /**
+     * Assemble the detail dialog, with empty contents
+     */
+    private void createDetailDialog() {
+        detailDialog = new JDialog(frame, "Mer info");
+        detailImage = new JLabel();
+        detailTitle = new JLabel();
+        detailDescription = new JTextArea();
         JPanel panel = new JPanel();
         JPanel innerPanel = new JPanel();
         JScrollPane innerPScroll = new JScrollPane(innerPanel);
 
-        title.setFont(new Font("Verdana", Font.PLAIN, 25));
-        title.setAlignmentX(Component.CENTER_ALIGNMENT);
-        title.setSize(new Dimension(480, 50));
-        desc.setEditable(false);
-        desc.setLineWrap(true);
+        detailTitle.setFont(new Font("Verdana", Font.PLAIN, 25));
+        detailTitle.setAlignmentX(Component.CENTER_ALIGNMENT);
+        detailTitle.setSize(new Dimension(480, 50));
+        detailDescription.setEditable(false);
+        detailDescription.setLineWrap(true);
         innerPanel.setLayout(new BoxLayout(innerPanel, BoxLayout.Y_AXIS));
         innerPanel.setPreferredSize(new Dimension(480, 250));
         innerPScroll.setSize(500, 150);
 
-        panel.add(image, BorderLayout.PAGE_START);
-        innerPanel.add(title);
-        innerPanel.add(desc);
+        panel.add(detailImage, BorderLayout.PAGE_START);
+        innerPanel.add(detailTitle);
+        innerPanel.add(detailDescription);
         panel.add(innerPScroll, BorderLayout.CENTER);
-        dialog.add(panel);
-        dialog.setSize(new Dimension(500, 650));
-        dialog.setResizable(false);
+        detailDialog.add(panel);
+        detailDialog.setSize(new Dimension(500, 650));
+        detailDialog.setResizable(false);
+        detailDialog.setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
+    }
+
+    /**
+     * Configure a JDialog showing the fetch, parse, cache and render metrics. The metrics are refreshed while the
+     * dialog is open.
+     */
+    public void configureDiagnosticsDialog() {
+        JDialog dialog = new JDialog(frame, "Diagnostik");
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.add(new DiagnosticsPanel());
+        dialog.pack();
+        dialog.setVisible(true);
+    }
+
+    /**
+     * Configure a JDialog for searching the programmes of all cached channels. The results are updated for every
+     * keystroke, and double-clicking a result, or pressing enter on it, selects its channel.
+     */
+    public void configureSearchDialog() {
+        JDialog dialog = new JDialog(frame, "Sök program");
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        JTextField query = new JTextField(30);
+        DefaultListModel<SearchIndex.Hit> hits = new DefaultListModel<>();
+        JList<SearchIndex.Hit> results = new JList<>(hits);
+        DateTimeFormatter time = DateTimeFormatter.ofPattern("EEE HH:mm");
+        results.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected,
+                                                          boolean focused) {
+                SearchIndex.Hit hit = (SearchIndex.Hit) value;
+                String text = hit.programme().startTime().format(time.withLocale(getLocale())) + "  "
+                        + hit.programme().name() + "  (" + channelName(hit.channelId()) + ")";
+                return super.getListCellRendererComponent(list, text, index, selected, focused);
+            }
+        });
+        query.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                update();
+            }
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                update();
+            }
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                update();
+            }
+            private void update() {
+                hits.clear();
+                hits.addAll(controller.search(query.getText()));
+            }
+        });
+        results.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && results.getSelectedValue() != null)
+                    selectChannel(results.getSelectedValue().channelId());
+            }
+        });
+        results.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "select");
+        results.getActionMap().put("select", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (results.getSelectedValue() != null)
+                    selectChannel(results.getSelectedValue().channelId());
+            }
+        });
+        query.addActionListener(e -> {
+            if (!hits.isEmpty()) {
+                results.setSelectedIndex(0);
+                results.requestFocusInWindow();
+            }
+        });
+
+        dialog.add(query, BorderLayout.PAGE_START);
+        dialog.add(new JScrollPane(results), BorderLayout.CENTER);
+        dialog.setSize(new Dimension(600, 400));
         dialog.setVisible(true);
     }
 
+    /**
+     * @param id channel id
+     * @return the name of the channel, or the id if the channel is not in the list
+     */
+    private String channelName(String id) {
+        ListModel<Channel> channels = channelList.getModel();
+        for (int i = 0; i < channels.getSize(); i++) {
+            if (channels.getElementAt(i).id.equals(id))
+                return channels.getElementAt(i).name;
+        }
+        return id;
+    }
+
+    /**
+     * Select a channel in the channel list, which shows its programmes
+     * @param id channel id
+     */
+    private void selectChannel(String id) {
+        ListModel<Channel> channels = channelList.getModel();
+        for (int i = 0; i < channels.getSize(); i++) {
+            if (channels.getElementAt(i).id.equals(id)) {
+                channelList.setSelectedIndex(i);
+                channelList.ensureIndexIsVisible(i);
+                return;
+            }
+        }
+    }
+
     /**
      * Configure the list containing all channels
      * @param listModel listModel containing all channels fetched
      * @return JScrollpane containing the channel list
      */
     private JScrollPane configureList(DefaultListModel<Channel> listModel) {
-        JList list = new JList(listModel);
+        JList<Channel> list = new JList<>(listModel);
+        channelList = list;
         list.getSelectionModel().addListSelectionListener(arg0 -> {
             if (!arg0.getValueIsAdjusting()) {
-                Channel channel = (Channel)list.getSelectedValue();
+                Channel channel = list.getSelectedValue();
+                if (channel == null)
+                    return;
                 controller.selectChannel(channel.id);
+                prefetchNeighbours(listModel, list.getSelectedIndex());
             }
         });
         return new JScrollPane(list);
     }
 
     /**
-     * Configure the table containing all programmes in a selected channel
-     * @param tableModel List of programmes in the current channel
+     * Show or hide the loading message at the bottom of the window
+     * @param loading true while channels are being loaded
      */
-    public void configureTable(DefaultTableModel tableModel) {
-        this.tableModel.setRowCount(0);
-        for (int row = 1; row<tableModel.getRowCount();row++) {
-            String[] data = {
-                    tableModel.getValueAt(row, 0).toString(),
-                    tableModel.getValueAt(row, 1).toString(),
-                    tableModel.getValueAt(row, 2).toString(),
-                    tableModel.getValueAt(row, 3).toString(),
-                    tableModel.getValueAt(row, 4).toString(),
-            };
-            this.tableModel.addRow(data);
-        }
-        this.tableModel.fireTableDataChanged();
+    public void setLoading(boolean loading) {
+        status.setText(loading ? "Laddar kanaler..." : " ");
+    }
+
+    /**
+     * Show how far the warm-up of all channels has come at the bottom of the window
+     * @param progress progress of the warm-up
+     */
+    public void setWarmProgress(BulkWarmer.Progress progress) {
+        if (progress.cancelled())
+            status.setText("Förladdning avbruten");
+        else if (progress.isFinished())
+            status.setText(progress.failed() == 0 ? " " : progress.failed() + " kanaler kunde inte förladdas");
+        else
+            status.setText("Förladdar kanaler " + (progress.done() + progress.failed()) + "/" + progress.total());
+    }
+
+    /**
+     * Select the first channel in the list, if nothing has been selected yet
+     */
+    public void selectFirstChannel() {
+        if (channelList.isSelectionEmpty() && channelList.getModel().getSize() > 0)
+            channelList.setSelectedIndex(0);
+    }
+
+    /**
+     * Ask the controller to prefetch the channels directly below and above the selected one, since those are the most
+     * likely to be selected next when browsing the list
+     * @param listModel listModel containing all channels
+     * @param index index of the selected channel
+     */
+    private void prefetchNeighbours(DefaultListModel<Channel> listModel, int index) {
+        List<String> ids = new ArrayList<>();
+        if (index + 1 < listModel.getSize())
+            ids.add(listModel.get(index + 1).id);
+        if (index - 1 >= 0)
+            ids.add(listModel.get(index - 1).id);
+        controller.prefetchChannels(ids);
+    }
+
+    /**
+     * Ask the controller to prefetch the images of the programmes in the rows currently visible in the table
+     */
+    private void prefetchVisibleImages() {
+        Rectangle visible = jt.getVisibleRect();
+        int first = jt.rowAtPoint(visible.getLocation());
+        int last = jt.rowAtPoint(new Point(visible.x, visible.y + visible.height - 1));
+        if (first < 0)
+            return;
+        if (last < 0)
+            last = jt.getRowCount() - 1;
+        List<String> imagePaths = new ArrayList<>();
+        for (int row = first; row <= last; row++)
+            imagePaths.add(tableModel.getProgramme(jt.convertRowIndexToModel(row)).imagePath());
+        controller.prefetchImages(imagePaths);
+    }
+
+    /**
+     * Configure the table containing all programmes in a selected channel. The programmes are not copied, the table
+     * only repaints the rows that differ from the programmes shown before.
+     * @param programmes List of programmes in the current channel
+     */
+    public void configureTable(List<Programme> programmes) {
+        long start = Metrics.start();
+        tableModel.setProgrammes(programmes);
+        CONFIGURE_TABLE_TIME.recordSince(start);
+        SwingUtilities.invokeLater(this::prefetchVisibleImages);
     }
 
     /**
@@ -126,15 +319,20 @@ public class View {
      */
     private void configureFrame(DefaultListModel<Channel> listModel) {
         jt = new JTable(tableModel);
-        jt.setAutoCreateRowSorter(true);
+        TableRowSorter<ScheduleTableModel> sorter = new TableRowSorter<>(tableModel);
+        for (int col = 0; col < tableModel.getColumnCount(); col++)
+            sorter.setComparator(col, ScheduleTableModel.comparator(col));
+        jt.setRowSorter(sorter);
         jt.setBounds(30,40,200,300);
         jt.removeColumn(jt.getColumnModel().getColumn(0));
         jt.removeColumn(jt.getColumnModel().getColumn(0));
         JScrollPane sp=new JScrollPane(jt);
+        sp.getViewport().addChangeListener(e -> prefetchVisibleImages());
         getMoreInfo();
 
         frame.add(sp, BorderLayout.CENTER);
         frame.add(configureList(listModel), BorderLayout.LINE_START);
+        frame.add(status, BorderLayout.PAGE_END);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(1000,700);
         frame.setVisible(true);
@@ -147,10 +345,11 @@ public class View {
         jt.getSelectionModel().addListSelectionListener(event -> {
             if(!event.getValueIsAdjusting()) {
                 if (jt.getSelectedRow() > -1) {
+                    Programme p = tableModel.getProgramme(jt.convertRowIndexToModel(jt.getSelectedRow()));
                     controller.getProgrammeInfo(
-                            tableModel.getValueAt(jt.getSelectedRow(), 0).toString(),
-                            tableModel.getValueAt(jt.getSelectedRow(), 1).toString(),
-                            tableModel.getValueAt(jt.getSelectedRow(), 2).toString(),
+                            p.imagePath(),
+                            p.description(),
+                            p.name(),
                             jt.getSelectedRow()
                     );
                 }
@@ -167,6 +366,19 @@ public class View {
         JMenuItem refresh = new JMenuItem("Uppdatera nuvarande kanal");
         menu.add(refresh);
         refresh.addActionListener(new ChannelUpdater());
+        JMenuItem warm = new JMenuItem("Förladda alla kanaler");
+        menu.add(warm);
+        warm.addActionListener(e -> controller.warmAllChannels());
+        JMenuItem cancelWarm = new JMenuItem("Avbryt förladdning");
+        menu.add(cancelWarm);
+        cancelWarm.addActionListener(e -> controller.cancelWarmAllChannels());
+        JMenuItem search = new JMenuItem("Sök program");
+        search.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        menu.add(search);
+        search.addActionListener(e -> configureSearchDialog());
+        JMenuItem diagnostics = new JMenuItem("Diagnostik");
+        menu.add(diagnostics);
+        diagnostics.addActionListener(e -> configureDiagnosticsDialog());
         menuBar.add(menu);
         frame.setJMenuBar(menuBar);
     }
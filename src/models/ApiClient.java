@@ -0,0 +1,364 @@
+package models;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * ApiClient is the shared HTTP layer used by the parser. It keeps one pooled keep-alive client for the whole program,
+ * makes exactly one request per resource, negotiates gzip and remembers the ETag/Last-Modified validators of every
+ * response so that a 304 Not Modified can hand back the already parsed result instead of downloading and parsing
+ * it again. Every endpoint has a circuit breaker: after five failures in a row, requests to that endpoint fail at once
+ * for 30 seconds, and then for up to five minutes while trial requests keep failing.
+ * <p>
+ * A third of the connections are kept for interactive requests: prefetch and background threads, as told by
+ * TaskExecutor.currentPriority, may only use the rest, so a user never waits for a connection behind a bulk refresh.
+ * Interrupting the calling thread abandons a request, also while its response is read or parsed; an abandoned request
+ * says nothing about the health of the endpoint and is not reported to its circuit breaker.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ApiClient {
+    private static final ApiClient SHARED = new ApiClient(Duration.ofSeconds(5), Duration.ofSeconds(15), 6);
+
+    private static final Histogram REQUEST_TIME = Metrics.timer("api.request");
+    private static final Histogram RESPONSE_BYTES = Metrics.histogram("api.response.bytes", "bytes");
+    private static final Metrics.Counter FAILURES = Metrics.counter("api.failures");
+    private static final Metrics.Counter REJECTED = Metrics.counter("breaker.rejected");
+    private static final Metrics.Counter ABANDONED = Metrics.counter("api.abandoned");
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final Semaphore permits;
+    private final Semaphore backgroundPermits;
+    private final ConcurrentHashMap<String, CachedResponse> validators = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Reads a successful response body into a result
+     * @param <T> type of the parsed result
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(InputStream in) throws IOException, XMLStreamException;
+    }
+
+    /**
+     * The validators a response was served with, and the parsed response if the client keeps it
+     */
+    private record CachedResponse(URI uri, String eTag, String lastModified, Object value) { }
+
+    /**
+     * Thrown when the server refuses a request because of the request itself, with a 4xx code other than 408 Request
+     * Timeout and 429 Too Many Requests. Sending the same request again gives the same answer, so it is not retried.
+     */
+    public static class ClientErrorException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        /**
+         * @param statusCode the status code of the response
+         * @param uri requested resource
+         */
+        public ClientErrorException(int statusCode, URI uri) {
+            super("Unexpected response code " + statusCode + " from " + uri);
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * @return the status code of the response
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    /**
+     * Create a client
+     * @param connectTimeout timeout for opening a connection
+     * @param requestTimeout timeout for the whole request, until the response headers are received
+     * @param maxConcurrentRequests the maximum number of requests that may be in flight at the same time
+     */
+    public ApiClient(Duration connectTimeout, Duration requestTimeout, int maxConcurrentRequests) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        this.backgroundPermits = new Semaphore(Math.max(1, maxConcurrentRequests - maxConcurrentRequests / 3), true);
+    }
+
+    /**
+     * Count a request abandoned because the calling thread was interrupted
+     * @param uri requested resource
+     * @param cause what the interrupt caused
+     * @return exception to throw
+     */
+    private static InterruptedIOException abandoned(URI uri, Exception cause) {
+        ABANDONED.increment();
+        InterruptedIOException e = new InterruptedIOException("Interrupted while fetching " + uri);
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * @return the client shared by the whole program
+     */
+    public static ApiClient shared() {
+        return SHARED;
+    }
+
+    /**
+     * Make a single conditional GET request. If the server answers 304 the result cached under the key is returned
+     * without reading a body. If it answers 200 the (possibly gzipped) body is handed to the reader and the result is
+     * cached together with its validators.
+     * @param key Cache key for the resource, e.g. a channel id. Validators are only sent if the key was last used for
+     *            the same uri.
+     * @param uri URI to fetch
+     * @param reader Reader that parses the response body
+     * @param <T> type of the parsed result
+     * @return the parsed result
+     * @throws IOException if the request fails or the server answers with anything but 200 or 304, a
+     * ClientErrorException if the server refuses the request itself
+     */
+    public <T> T get(String key, URI uri, BodyReader<T> reader) throws IOException {
+        return send(key, uri, reader, null);
+    }
+
+    /**
+     * Make a single conditional GET request for a resource whose parsed result is cached by the caller. Only the
+     * validators are remembered, so that the client does not keep results alive that the caller has let go of. If the
+     * server answers 304 the caller's current result is returned; if the caller has no result the request is sent
+     * unconditionally.
+     * @param key Cache key for the resource. Validators are only sent if the key was last used for the same uri.
+     * @param uri URI to fetch
+     * @param reader Reader that parses the response body
+     * @param current Supplies the caller's current result for the resource, or null if it has none
+     * @param <T> type of the parsed result
+     * @return the parsed result
+     * @throws IOException if the request fails or the server answers with anything but 200 or 304, a
+     * ClientErrorException if the server refuses the request itself
+     */
+    public <T> T get(String key, URI uri, BodyReader<T> reader, Supplier<T> current) throws IOException {
+        return send(key, uri, reader, current);
+    }
+
+    /**
+     * Make a single unconditional GET request and hand the (possibly gzipped) body to the reader. Nothing is
+     * remembered about the response, this is meant for resources that are cached elsewhere, such as images.
+     * @param uri URI to fetch
+     * @param reader Reader that parses the response body
+     * @param <T> type of the parsed result
+     * @return the parsed result
+     * @throws IOException if the request fails or the server answers with anything but 200, a ClientErrorException
+     * if the server refuses the request itself
+     */
+    public <T> T get(URI uri, BodyReader<T> reader) throws IOException {
+        return send(null, uri, reader, null);
+    }
+
+    /**
+     * Send a GET request, conditional if a key is given and validators are known for it
+     * @param key Cache key for the resource, or null if validators should neither be sent nor remembered
+     * @param uri URI to fetch
+     * @param reader Reader that parses the response body
+     * @param current Supplies the caller's current result, or null if the client keeps the result itself
+     * @param <T> type of the parsed result
+     * @return the parsed result
+     * @throws IOException if the request fails or the server answers with an unexpected code
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T send(String key, URI uri, BodyReader<T> reader, Supplier<T> current) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", "gzip")
+                .GET();
+
+        CachedResponse cached = key == null ? null : validators.get(key);
+        Object known = current != null ? current.get() : cached != null ? cached.value : null;
+        if (cached != null && cached.uri.equals(uri) && known != null) {
+            if (cached.eTag != null)
+                builder.header("If-None-Match", cached.eTag);
+            if (cached.lastModified != null)
+                builder.header("If-Modified-Since", cached.lastModified);
+        } else {
+            cached = null;
+        }
+
+        CircuitBreaker breaker = breakers.computeIfAbsent(endpoint(uri),
+                e -> new CircuitBreaker(5, 30_000, 300_000));
+        if (!breaker.tryAcquire()) {
+            REJECTED.increment();
+            throw new IOException("Circuit open, not fetching " + uri);
+        }
+        boolean interactive = TaskExecutor.currentPriority() == TaskExecutor.Priority.INTERACTIVE;
+        try {
+            if (!interactive)
+                backgroundPermits.acquire();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                if (!interactive)
+                    backgroundPermits.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection", e);
+        }
+        // null until it is known whether the endpoint answered properly
+        Boolean healthy = null;
+        long start = Metrics.start();
+        try {
+            HttpResponse<InputStream> response = client.send(builder.build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            REQUEST_TIME.recordSince(start);
+            if (start != 0)
+                Metrics.counter("api.status." + response.statusCode()).increment();
+            CountingInputStream counted = start != 0 ? new CountingInputStream(response.body()) : null;
+            try (InputStream body = decode(response, counted)) {
+                if (response.statusCode() == 304 && cached != null) {
+                    healthy = true;
+                    return (T) known;
+                }
+                if (response.statusCode() != 200) {
+                    int status = response.statusCode();
+                    healthy = status < 500 && status != 429;
+                    if (status >= 400 && status < 500 && status != 408 && status != 429)
+                        throw new ClientErrorException(status, uri);
+                    throw new IOException("Unexpected response code " + response.statusCode() + " from " + uri);
+                }
+
+                T value = reader.read(body);
+                healthy = true;
+                if (counted != null)
+                    RESPONSE_BYTES.record(counted.count);
+                if (key == null)
+                    return value;
+                String eTag = response.headers().firstValue("ETag").orElse(null);
+                String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+                if (eTag != null || lastModified != null)
+                    validators.put(key, new CachedResponse(uri, eTag, lastModified, current == null ? value : null));
+                else
+                    validators.remove(key);
+                return value;
+            }
+        } catch (XMLStreamException e) {
+            if (Thread.currentThread().isInterrupted())
+                throw abandoned(uri, e);
+            FAILURES.increment();
+            healthy = false;
+            throw new IOException("Malformed response from " + uri, e);
+        } catch (IOException e) {
+            if (healthy == null && Thread.currentThread().isInterrupted())
+                throw abandoned(uri, e);
+            FAILURES.increment();
+            if (healthy == null)
+                healthy = false;
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw abandoned(uri, e);
+        } finally {
+            permits.release();
+            if (!interactive)
+                backgroundPermits.release();
+            if (healthy == Boolean.TRUE)
+                breaker.onSuccess();
+            else if (healthy == Boolean.FALSE)
+                breaker.onFailure();
+        }
+    }
+
+    /**
+     * The endpoint a URI belongs to, for the circuit breakers: its host and port and the first two segments of its
+     * path, e.g. api.sr.se/v2/scheduledepisodes
+     * @param uri URI of a request
+     * @return endpoint key
+     */
+    private static String endpoint(URI uri) {
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        String[] segments = path.split("/", 4);
+        StringBuilder key = new StringBuilder(String.valueOf(uri.getAuthority()));
+        for (int i = 1; i < Math.min(3, segments.length); i++)
+            key.append('/').append(segments[i]);
+        return key.toString();
+    }
+
+    /**
+     * @param uri URI of a request
+     * @return false if the circuit breaker of the URI's endpoint is open and a request would fail at once
+     */
+    public boolean isAvailable(URI uri) {
+        CircuitBreaker breaker = breakers.get(endpoint(uri));
+        return breaker == null || breaker.getState() != CircuitBreaker.State.OPEN;
+    }
+
+    /**
+     * @return state of the circuit breaker of every endpoint that has been used
+     */
+    public Map<String, CircuitBreaker.State> getBreakerStates() {
+        TreeMap<String, CircuitBreaker.State> states = new TreeMap<>();
+        breakers.forEach((endpoint, breaker) -> states.put(endpoint, breaker.getState()));
+        return states;
+    }
+
+    /**
+     * Unwrap the response body if the server chose to gzip it
+     * @param response HTTP response
+     * @param counted the response body wrapped to count the bytes received, or null if they are not counted
+     * @return stream with the plain body
+     * @throws IOException if the gzip header is broken
+     */
+    private static InputStream decode(HttpResponse<InputStream> response, InputStream counted) throws IOException {
+        InputStream raw = counted != null ? counted : response.body();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip"))
+            return new GZIPInputStream(raw);
+        return raw;
+    }
+
+    /**
+     * Stream that counts the bytes read through it, i.e. the bytes received before decompression
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package models;
+
+import java.net.URI;
+import java.time.LocalDate;
+
+/**
+ * ApiEndpoint builds the URLs of the SR API resources used by the parser. The base URL defaults to the public API and
+ * can be pointed elsewhere, e.g. at a local stand-in server, with the system property radioinfo.apiUrl.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public final class ApiEndpoint {
+    public static final String PROPERTY = "radioinfo.apiUrl";
+    public static final URI DEFAULT = URI.create("http://api.sr.se/");
+
+    private final URI base;
+
+    /**
+     * @param base base URL that the resource paths are resolved against, e.g. http://api.sr.se/
+     */
+    public ApiEndpoint(URI base) {
+        String url = base.toString();
+        this.base = url.endsWith("/") ? base : URI.create(url + "/");
+    }
+
+    /**
+     * @return the endpoint given by the radioinfo.apiUrl system property, or the public SR API if it is not set
+     */
+    public static ApiEndpoint configured() {
+        String url = System.getProperty(PROPERTY);
+        return new ApiEndpoint(url == null || url.isBlank() ? DEFAULT : URI.create(url.trim()));
+    }
+
+    /**
+     * @return the base URL
+     */
+    public URI base() {
+        return base;
+    }
+
+    /**
+     * @return URL of the list of all channels, on a single page
+     */
+    public URI channels() {
+        return base.resolve("api/v2/channels/?pagination=false");
+    }
+
+    /**
+     * @param channelId channel id
+     * @param from first day, inclusive
+     * @param to last day, inclusive
+     * @return URL of the scheduled episodes of the channel between the two days, on a single page
+     */
+    public URI schedule(String channelId, LocalDate from, LocalDate to) {
+        return base.resolve("v2/scheduledepisodes?channelid=" + channelId + "&pagination=false"
+                + "&fromDate=" + from + "&toDate=" + to);
+    }
+
+    @Override
+    public String toString() {
+        return base.toString();
+    }
+}
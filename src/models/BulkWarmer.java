@@ -0,0 +1,154 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * BulkWarmer fetches the schedule of every channel that is not cached yet, so that the first visit to a channel is a
+ * cache hit. A fixed pool of low-priority workers take the channels one at a time, which caps the number of
+ * requests in flight and means nothing queues up beyond it; every request also needs a token from a token bucket, so
+ * the upstream API never sees more than the configured rate. Workers pause while the user waits for a request of
+ * their own. The whole warm-up takes roughly channels / concurrency request times, as long as the rate limit is not
+ * the tighter bound.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class BulkWarmer {
+    private static final long BACKOFF_MILLIS = 50;
+
+    private final int concurrency;
+    private final ExecutorService pool;
+    private final TokenBucket rateLimit;
+    private final BooleanSupplier userWaiting;
+    private AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * How far a warm-up has come
+     * @param done channels fetched
+     * @param failed channels that could not be fetched
+     * @param total channels to fetch
+     * @param cancelled true if the warm-up was cancelled before it finished
+     */
+    public record Progress(int done, int failed, int total, boolean cancelled) {
+        /**
+         * @return true if every channel has been tried
+         */
+        public boolean isFinished() {
+            return done + failed == total;
+        }
+    }
+
+    /**
+     * Create a bulk warmer
+     * @param concurrency the most channels fetched at the same time
+     * @param requestsPerSecond the most requests started per second
+     * @param burst the most requests started back to back before the rate applies
+     * @param userWaiting tells whether a user request is in flight, the warm-up pauses while it is
+     */
+    public BulkWarmer(int concurrency, double requestsPerSecond, int burst, BooleanSupplier userWaiting) {
+        this.concurrency = Math.max(1, concurrency);
+        this.pool = Executors.newFixedThreadPool(this.concurrency,
+                TaskExecutor.threadFactory("bulk-warm", TaskExecutor.Priority.BACKGROUND));
+        this.rateLimit = new TokenBucket(requestsPerSecond, burst);
+        this.userWaiting = userWaiting;
+    }
+
+    /**
+     * Fetch every given channel that is not cached yet into the cache. Cancels a warm-up that is still running.
+     * @param channels channels to warm, in the order they should be fetched
+     * @param programMap Programme cache
+     * @param onProgress Called on a background thread after every channel, and once more if the warm-up is cancelled
+     * @return future that completes with the final progress when every channel has been tried or the warm-up has been
+     * cancelled
+     */
+    public synchronized CompletableFuture<Progress> warm(List<Channel> channels, ScheduleCache programMap,
+                                                         Consumer<Progress> onProgress) {
+        running.set(false);
+        AtomicBoolean active = running = new AtomicBoolean(true);
+
+        List<String> ids = new ArrayList<>();
+        for (Channel channel : channels) {
+            if (!channel.id.isEmpty() && !programMap.containsKey(channel.id))
+                ids.add(channel.id);
+        }
+        int total = ids.size();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CompletableFuture<Progress> result = new CompletableFuture<>();
+        int workerCount = Math.min(concurrency, total);
+        AtomicInteger workers = new AtomicInteger(workerCount);
+        if (total == 0) {
+            active.set(false);
+            onProgress.accept(new Progress(0, 0, 0, false));
+            result.complete(new Progress(0, 0, 0, false));
+            return result;
+        }
+
+        Runnable worker = () -> {
+            try {
+                int i;
+                while (awaitTurn(active) && (i = next.getAndIncrement()) < total) {
+                    if (UpdaterModel.fetchChannel(programMap, ids.get(i)) != null)
+                        done.incrementAndGet();
+                    else
+                        failed.incrementAndGet();
+                    onProgress.accept(new Progress(done.get(), failed.get(), total, false));
+                }
+            } finally {
+                if (workers.decrementAndGet() == 0) {
+                    Progress last = new Progress(done.get(), failed.get(), total, !active.get());
+                    active.set(false);
+                    if (last.cancelled())
+                        onProgress.accept(last);
+                    result.complete(last);
+                }
+            }
+        };
+        for (int w = 0; w < workerCount; w++)
+            pool.execute(worker);
+        return result;
+    }
+
+    /**
+     * Stop the running warm-up. Fetches that are already running are allowed to finish, since a user request may be
+     * sharing them.
+     */
+    public synchronized void cancel() {
+        running.set(false);
+    }
+
+    /**
+     * @return true while a warm-up is running
+     */
+    public synchronized boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Wait until no user request is in flight and the rate limit allows another request
+     * @param active flag of the warm-up that is waiting
+     * @return false if the warm-up was cancelled
+     */
+    private boolean awaitTurn(AtomicBoolean active) {
+        try {
+            while (active.get() && userWaiting.getAsBoolean())
+                Thread.sleep(BACKOFF_MILLIS);
+            if (!active.get())
+                return false;
+            rateLimit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return active.get();
+    }
+}
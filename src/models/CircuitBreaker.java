@@ -0,0 +1,101 @@
+package models;
+
+/**
+ * CircuitBreaker stops requests to an endpoint that keeps failing. After a number of failures in a row the breaker
+ * opens and every request is rejected at once, without touching the network, until a cool-down has passed. Then a
+ * single trial request is let through: if it succeeds the breaker closes again, if it fails the breaker stays open
+ * for another, twice as long, cool-down.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class CircuitBreaker {
+    private static final Metrics.Counter OPENED = Metrics.counter("breaker.opened");
+
+    /**
+     * State of the breaker
+     */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long coolDownMillis;
+    private final long maxCoolDownMillis;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long currentCoolDown;
+    private long openedAt;
+
+    /**
+     * Create a closed breaker
+     * @param failureThreshold failures in a row that open the breaker
+     * @param coolDownMillis how long the breaker stays open the first time
+     * @param maxCoolDownMillis the longest the breaker stays open after repeated failed trials
+     */
+    public CircuitBreaker(int failureThreshold, long coolDownMillis, long maxCoolDownMillis) {
+        this.failureThreshold = failureThreshold;
+        this.coolDownMillis = coolDownMillis;
+        this.maxCoolDownMillis = maxCoolDownMillis;
+        this.currentCoolDown = coolDownMillis;
+    }
+
+    /**
+     * Ask for permission to make a request. While half open only the one trial request is allowed.
+     * @return true if the request may be made, false if it should fail at once
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < currentCoolDown)
+                    return false;
+                state = State.HALF_OPEN;
+                openedAt = System.currentTimeMillis();
+                return true;
+            default:
+                // a trial that never reported back, e.g. because it was interrupted, does not block forever
+                if (System.currentTimeMillis() - openedAt < currentCoolDown)
+                    return false;
+                openedAt = System.currentTimeMillis();
+                return true;
+        }
+    }
+
+    /**
+     * Report that a permitted request succeeded
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        currentCoolDown = coolDownMillis;
+    }
+
+    /**
+     * Report that a permitted request failed
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            currentCoolDown = Math.min(maxCoolDownMillis, currentCoolDown * 2);
+            open();
+        } else if (++failures >= failureThreshold && state == State.CLOSED) {
+            open();
+        }
+    }
+
+    /**
+     * @return the current state
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= currentCoolDown)
+            return State.HALF_OPEN;
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        failures = 0;
+        OPENED.increment();
+    }
+}
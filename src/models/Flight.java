@@ -0,0 +1,24 @@
+package models;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Flight is a load in progress that other callers asking for the same thing wait for instead of loading it again. It
+ * remembers whether it was started on an interactive thread. An interactive caller does not wait for a flight that a
+ * prefetch or a background refresh started, because that flight may be queued behind other background requests for
+ * one of the ApiClient's background permits; it takes the flight over and loads on its own instead.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+final class Flight<T> extends CompletableFuture<T> {
+    private final boolean interactive = TaskExecutor.currentPriority() == TaskExecutor.Priority.INTERACTIVE;
+
+    /**
+     * @return true if the calling thread should take this flight over instead of waiting for it: the calling thread is
+     * interactive and the thread that started the flight is not
+     */
+    boolean shouldTakeOver() {
+        return !interactive && TaskExecutor.currentPriority() == TaskExecutor.Priority.INTERACTIVE;
+    }
+}
@@ -0,0 +1,82 @@
+package models;
+
+/**
+ * FrequencySketch estimates how often each key has been accessed recently, in a fixed amount of memory. It is a
+ * count-min sketch with four rows of small saturating counters: a key increments one counter per row and its estimate
+ * is the smallest of them, so collisions can only make a key look more popular, never less. Once the sketch has
+ * counted ten times as many accesses as it has counters per row, every counter is halved, so that old popularity fades
+ * and keys that used to be popular do not stay in the cache forever.
+ * <p>
+ * The sketch is not thread-safe; its owner guards it with its own lock.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedKeys roughly how many different keys are accessed, e.g. the number of channels
+     */
+    FrequencySketch(int expectedKeys) {
+        int width = Integer.highestOneBit(Math.max(16, expectedKeys * 4) - 1) << 1;
+        this.counters = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = width * 10;
+    }
+
+    /**
+     * Count an access to a key
+     * @param key accessed key
+     */
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int i = index(hash, row);
+            if (counters[row][i] < MAX_COUNT) {
+                counters[row][i]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize)
+            age();
+    }
+
+    /**
+     * @param key key
+     * @return estimated number of recent accesses to the key, at most 15
+     */
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++)
+            min = Math.min(min, counters[row][index(hash, row)]);
+        return min;
+    }
+
+    private void age() {
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++)
+                row[i] >>= 1;
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return (h ^ h >>> 16) & mask;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ hash >>> 15;
+    }
+}
@@ -0,0 +1,176 @@
+package models;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram is a lock-free, fixed-size histogram of non-negative long values such as durations in nanoseconds. Values
+ * are counted in log-linear buckets: every power of two is split into eight buckets, so any percentile read back is
+ * within 12.5% of the recorded value, and recording is a handful of atomic increments without any allocation.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public final class Histogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = (64 - 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * @return name of the histogram
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return unit of the recorded values, e.g. "ns" or "bytes"
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Record a value, if metrics are enabled
+     * @param value value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (!Metrics.isEnabled())
+            return;
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Record the time passed since a start time taken with Metrics.start()
+     * @param startNanos start time, or 0 if metrics were disabled when it was taken
+     */
+    public void recordSince(long startNanos) {
+        if (startNanos != 0)
+            record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return a consistent enough copy of the histogram to read percentiles from
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            copy[i] = counts.get(i);
+        return new Snapshot(name, unit, copy, count.get(), sum.get(), max.get());
+    }
+
+    /**
+     * Forget everything recorded so far
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + 2;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+
+    /**
+     * A copy of a histogram at one point in time
+     */
+    public static final class Snapshot {
+        private final String name;
+        private final String unit;
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(String name, String unit, long[] counts, long count, long sum, long max) {
+            this.name = name;
+            this.unit = unit;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getP50() {
+            return percentile(0.50);
+        }
+
+        public long getP90() {
+            return percentile(0.90);
+        }
+
+        public long getP99() {
+            return percentile(0.99);
+        }
+
+        /**
+         * @param p percentile between 0 and 1
+         * @return upper bound of the bucket the percentile falls in, never more than the largest recorded value
+         */
+        public long percentile(double p) {
+            long total = 0;
+            for (long c : counts)
+                total += c;
+            if (total == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+    }
+}
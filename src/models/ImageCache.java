@@ -0,0 +1,380 @@
+package models;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * ImageCache keeps programme images in two tiers. Decoded images, already scaled down to fit the detail dialog, are
+ * kept in an in-memory LRU with a byte budget. The raw downloaded bytes are kept on disk so that images evicted from
+ * memory, or from an earlier run, can be decoded again without a network round-trip. Concurrent loads of the same
+ * image share one download, except that a user waiting for an image does not wait for a prefetch of it.
+ * <p>
+ * The disk tier has a byte budget too, radioinfo.images.maxDiskBytes (default 256 MB) for the shared cache. Reading a
+ * file from disk updates its last-modified time, and when a download makes the directory exceed the budget the files
+ * that were least recently modified are deleted until it fits again.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ImageCache {
+    public static final int MAX_WIDTH = 480;
+    public static final int MAX_HEIGHT = 340;
+
+    private static final ImageCache SHARED = new ImageCache(
+            Path.of(System.getProperty("user.home"), ".radioinfo", "images"), 32L * 1024 * 1024,
+            Long.getLong("radioinfo.images.maxDiskBytes", 256L * 1024 * 1024));
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long byteBudget;
+    private final long diskBudget;
+    /** Bytes of the image files on disk, or -1 until the directory has been scanned. Guarded by directory. */
+    private long diskBytes = -1;
+    private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentHashMap<String, Flight<BufferedImage>> inFlight = new ConcurrentHashMap<>();
+    private long memoryBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create an image cache
+     * @param directory directory for the raw image bytes
+     * @param byteBudget the maximum number of bytes the decoded images in memory may occupy
+     * @param diskBudget the maximum number of bytes the raw images on disk may occupy
+     */
+    public ImageCache(Path directory, long byteBudget, long diskBudget) {
+        this.directory = directory;
+        this.byteBudget = byteBudget;
+        this.diskBudget = diskBudget;
+    }
+
+    /**
+     * @return the image cache shared by the whole program
+     */
+    public static ImageCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the image at the given url, scaled to fit the detail dialog. Look in memory first, then on disk and
+     * download it only if neither tier has it.
+     * @param imagePath url of the image
+     * @return BufferedImage, or null if the image could not be loaded
+     */
+    public BufferedImage get(String imagePath) {
+        synchronized (memory) {
+            BufferedImage img = memory.get(imagePath);
+            if (img != null) {
+                memoryHits.incrementAndGet();
+                return img;
+            }
+        }
+
+        Flight<BufferedImage> load = new Flight<>();
+        Flight<BufferedImage> existing;
+        while ((existing = inFlight.putIfAbsent(imagePath, load)) != null) {
+            if (!existing.shouldTakeOver())
+                return existing.join();
+            if (inFlight.replace(imagePath, existing, load))
+                break;
+        }
+
+        try {
+            BufferedImage img = load(imagePath);
+            if (img != null)
+                remember(imagePath, img);
+            load.complete(img);
+            return img;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(imagePath, load);
+        }
+    }
+
+    /**
+     * Check whether an image is already decoded in memory, without counting it as a hit or touching the LRU order
+     * @param imagePath url of the image
+     * @return true if the image is in memory
+     */
+    public boolean isCached(String imagePath) {
+        synchronized (memory) {
+            return memory.containsKey(imagePath);
+        }
+    }
+
+    /**
+     * Read the raw bytes from disk, or download and store them, then decode and scale them. A file on disk that does
+     * not decode, e.g. one cut short by a full disk, is deleted and the image is downloaded again. A download that does
+     * not decode is not stored.
+     * @param imagePath url of the image
+     * @return BufferedImage, or null if the image could not be loaded
+     */
+    private BufferedImage load(String imagePath) {
+        Path file = directory.resolve(fileName(imagePath));
+        if (Files.isReadable(file)) {
+            BufferedImage img = null;
+            try {
+                img = decode(Files.readAllBytes(file));
+            } catch (IOException | IllegalArgumentException ignored) {
+            }
+            if (img != null) {
+                diskHits.incrementAndGet();
+                touch(file);
+                return img;
+            }
+            delete(file);
+        }
+        try {
+            byte[] bytes = ApiClient.shared().get(URI.create(imagePath), in -> in.readAllBytes());
+            misses.incrementAndGet();
+            BufferedImage img = decode(bytes);
+            if (img != null)
+                store(file, bytes);
+            return img;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param bytes raw image bytes
+     * @return the decoded and scaled image, or null if the bytes are not an image ImageIO can read
+     * @throws IOException if the bytes are a broken image
+     */
+    private static BufferedImage decode(byte[] bytes) throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(bytes));
+        return img == null ? null : scale(img);
+    }
+
+    /**
+     * Delete an image file from disk, e.g. because it does not decode
+     * @param file image file
+     */
+    private void delete(Path file) {
+        synchronized (directory) {
+            try {
+                long size = Files.size(file);
+                if (Files.deleteIfExists(file) && diskBytes >= 0)
+                    diskBytes -= size;
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Write the raw bytes to disk through a temporary file so that a crash never leaves half an image behind, then
+     * keep the directory within its budget. Failing to write only means the image has to be downloaded again next
+     * time; the temporary file is deleted either way.
+     * @param file target file
+     * @param bytes raw image bytes
+     */
+    private void store(Path file, byte[] bytes) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(directory);
+            tmp = Files.createTempFile(directory, "img", TMP_SUFFIX);
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            return;
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        trimDisk(file, bytes.length);
+    }
+
+    /**
+     * Mark an image file as used now, so that it is among the last to be deleted from disk
+     * @param file image file
+     */
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Count a file that was just stored and, if the directory is over its budget, delete the least recently modified
+     * image files until it fits again
+     * @param stored the file that was just stored, which is never deleted
+     * @param size its size in bytes
+     */
+    private void trimDisk(Path stored, long size) {
+        synchronized (directory) {
+            if (diskBytes >= 0) {
+                diskBytes += size;
+                if (diskBytes <= diskBudget)
+                    return;
+            }
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> list = Files.list(directory)) {
+                list.filter(f -> !f.getFileName().toString().endsWith(TMP_SUFFIX)).forEach(files::add);
+            } catch (IOException e) {
+                return;
+            }
+            Map<Path, Long> sizes = new LinkedHashMap<>();
+            Map<Path, Long> modified = new LinkedHashMap<>();
+            long total = 0;
+            for (Path f : files) {
+                try {
+                    long s = Files.size(f);
+                    sizes.put(f, s);
+                    modified.put(f, Files.getLastModifiedTime(f).toMillis());
+                    total += s;
+                } catch (IOException ignored) {
+                    // deleted by someone else since the listing
+                }
+            }
+            List<Path> oldestFirst = new ArrayList<>(sizes.keySet());
+            oldestFirst.sort(Comparator.comparingLong(modified::get));
+            for (Iterator<Path> it = oldestFirst.iterator(); total > diskBudget && it.hasNext(); ) {
+                Path f = it.next();
+                if (f.equals(stored))
+                    continue;
+                try {
+                    Files.deleteIfExists(f);
+                    total -= sizes.get(f);
+                } catch (IOException ignored) {
+                }
+            }
+            diskBytes = total;
+        }
+    }
+
+    /**
+     * Put a decoded image in memory and evict the least recently used images until the budget is met
+     * @param imagePath url of the image
+     * @param img decoded image
+     */
+    private void remember(String imagePath, BufferedImage img) {
+        synchronized (memory) {
+            BufferedImage old = memory.put(imagePath, img);
+            if (old != null)
+                memoryBytes -= sizeOf(old);
+            memoryBytes += sizeOf(img);
+            Iterator<Map.Entry<String, BufferedImage>> it = memory.entrySet().iterator();
+            while (memoryBytes > byteBudget && it.hasNext()) {
+                Map.Entry<String, BufferedImage> eldest = it.next();
+                if (eldest.getKey().equals(imagePath))
+                    continue;
+                memoryBytes -= sizeOf(eldest.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Scale an image down, keeping its aspect ratio, so that it fits the detail dialog, and convert it to the pixel
+     * format of the screen. Both are done here, on a background thread, so that painting the image on the EDT is a
+     * plain copy. Smaller images are not scaled but still converted.
+     * @param img decoded image
+     * @return scaled image
+     */
+    static BufferedImage scale(BufferedImage img) {
+        double factor = Math.min(1.0, Math.min((double) MAX_WIDTH / img.getWidth(),
+                (double) MAX_HEIGHT / img.getHeight()));
+        int w = Math.max(1, (int) Math.round(img.getWidth() * factor));
+        int h = Math.max(1, (int) Math.round(img.getHeight() * factor));
+        BufferedImage scaled = createCompatibleImage(w, h, img.getColorModel().hasAlpha());
+        if (factor >= 1.0 && scaled.getType() == img.getType())
+            return img;
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(img, 0, 0, w, h, null);
+        g.dispose();
+        return scaled;
+    }
+
+    /**
+     * @param w width
+     * @param h height
+     * @param alpha true if the image has transparent pixels
+     * @return an empty image in the pixel format of the screen, or a plain RGB image without a screen
+     */
+    private static BufferedImage createCompatibleImage(int w, int h, boolean alpha) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration()
+                    .createCompatibleImage(w, h, alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE);
+        }
+        return new BufferedImage(w, h, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Estimate the number of bytes a decoded image occupies
+     * @param img decoded image
+     * @return bytes
+     */
+    private static long sizeOf(BufferedImage img) {
+        return (long) img.getWidth() * img.getHeight() * 4;
+    }
+
+    /**
+     * Name the file for an image after the SHA-256 hash of its url
+     * @param imagePath url of the image
+     * @return file name
+     */
+    private static String fileName(String imagePath) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(imagePath.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return number of requests served from memory
+     */
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    /**
+     * @return number of requests served from disk
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * @return number of requests that had to be downloaded
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,153 @@
+package models;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics is the program wide registry of counters, gauges and histograms. Call sites keep the histograms and
+ * counters they use in static final fields, so recording is a field access and a few atomic operations. When metrics
+ * are disabled, with -Dradioinfo.metrics=false or through JMX, Metrics.start() returns 0 and every record call returns
+ * after a single volatile read. The registry is exposed as the MBean radioinfo:type=Metrics and in the diagnostics
+ * panel of the GUI.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public final class Metrics {
+    public static final String PROPERTY = "radioinfo.metrics";
+    public static final String OBJECT_NAME = "radioinfo:type=Metrics";
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty(PROPERTY));
+
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() { }
+
+    /**
+     * A counter that only counts while metrics are enabled
+     */
+    public static final class Counter {
+        private final LongAdder adder = new LongAdder();
+
+        private Counter() { }
+
+        public void increment() {
+            if (enabled)
+                adder.increment();
+        }
+
+        public void add(long amount) {
+            if (enabled)
+                adder.add(amount);
+        }
+
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+    /**
+     * @return true if metrics are recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param on true to record metrics, false to make every record call a no-op
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * @return the current time in nanoseconds to pass to Histogram.recordSince, or 0 if metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @param name histogram name
+     * @param unit unit of the recorded values
+     * @return the histogram with the given name, created on first use
+     */
+    public static Histogram histogram(String name, String unit) {
+        return histograms.computeIfAbsent(name, n -> new Histogram(n, unit));
+    }
+
+    /**
+     * @param name histogram name, recording durations in nanoseconds
+     * @return the histogram with the given name, created on first use
+     */
+    public static Histogram timer(String name) {
+        return histogram(name, "ns");
+    }
+
+    /**
+     * @param name counter name
+     * @return the counter with the given name, created on first use
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Register a value that is read whenever the metrics are read, e.g. the size of a cache. Gauges cost nothing
+     * until they are read.
+     * @param name gauge name
+     * @param value supplier of the current value
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return snapshots of all histograms, ordered by name
+     */
+    public static Map<String, Histogram.Snapshot> histograms() {
+        TreeMap<String, Histogram.Snapshot> result = new TreeMap<>();
+        histograms.forEach((name, histogram) -> result.put(name, histogram.snapshot()));
+        return result;
+    }
+
+    /**
+     * @return current values of all counters and gauges, ordered by name
+     */
+    public static Map<String, Long> values() {
+        TreeMap<String, Long> result = new TreeMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> result.put(name, gauge.getAsLong()));
+        return result;
+    }
+
+    /**
+     * Reset all histograms. Counters and gauges keep counting.
+     */
+    public static void reset() {
+        histograms.values().forEach(Histogram::reset);
+    }
+
+    /**
+     * Register the metrics MBean with the platform MBean server, once
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ignored) {
+            // registered before
+        } catch (JMException e) {
+            System.getLogger(Metrics.class.getName()).log(System.Logger.Level.WARNING,
+                    "Could not register the metrics MBean", e);
+        }
+    }
+}
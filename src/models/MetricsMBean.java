@@ -0,0 +1,115 @@
+package models;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MetricsMBean exposes the Metrics registry over JMX. Every counter and gauge is a read-only attribute, every histogram
+ * is a group of attributes named histogram.count, .mean, .p50, .p90, .p99 and .max in the unit of the histogram.
+ * Enabled turns recording on and off, and the reset operation clears the histograms. The attribute list grows as
+ * metrics are used for the first time, so a JMX console may need to reconnect to see new ones.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class MetricsMBean implements DynamicMBean {
+    private static final String ENABLED = "Enabled";
+
+    /**
+     * @return every readable attribute with its current value
+     */
+    private static Map<String, Object> read() {
+        LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+        values.put(ENABLED, Metrics.isEnabled());
+        values.putAll(Metrics.values());
+        Metrics.histograms().forEach((name, h) -> {
+            values.put(name + ".count", h.getCount());
+            values.put(name + ".mean", h.getMean());
+            values.put(name + ".p50", h.getP50());
+            values.put(name + ".p90", h.getP90());
+            values.put(name + ".p99", h.getP99());
+            values.put(name + ".max", h.getMax());
+        });
+        return values;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = read().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException {
+        if (!attribute.getName().equals(ENABLED))
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        if (!(attribute.getValue() instanceof Boolean on))
+            throw new InvalidAttributeValueException("Enabled must be a boolean");
+        Metrics.setEnabled(on);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> values = read();
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            if (values.containsKey(name))
+                list.add(new Attribute(name, values.get(name)));
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        AttributeList set = new AttributeList();
+        for (Attribute attribute : attributes.asList()) {
+            try {
+                setAttribute(attribute);
+                set.add(attribute);
+            } catch (AttributeNotFoundException | InvalidAttributeValueException ignored) {
+                // not settable, left out of the result
+            }
+        }
+        return set;
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if (actionName.equals("reset")) {
+            Metrics.reset();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, String> units = new LinkedHashMap<>();
+        Metrics.histograms().forEach((name, h) -> units.put(name, h.getUnit()));
+
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        read().forEach((name, value) -> {
+            String histogram = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+            String description = units.containsKey(histogram) ? "in " + units.get(histogram) : name;
+            attributes.add(new MBeanAttributeInfo(name, value.getClass().getName(), description,
+                    true, name.equals(ENABLED), name.equals(ENABLED)));
+        });
+        MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Clear all histograms",
+                null, "void", MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(), "RadioInfo fetch, parse, cache and render metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{reset}, null);
+    }
+}
@@ -0,0 +1,180 @@
+package models;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefetcher speculatively warms the caches for what the user is likely to do next: the schedules of the channels
+ * next to the selected one and the images of the table rows that are visible. All work runs one task at a time in the
+ * PREFETCH class of the TaskExecutor, a new batch cancels the batch before it and the prefetcher pauses while the user is waiting
+ * for a request of their own. Only the most recent prefetches are remembered for the hit count, so that a long session
+ * does not keep every channel and image it ever prefetched.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class Prefetcher {
+    /** How many of the most recently prefetched channels and images are remembered for the hit count */
+    static final int REMEMBERED = 256;
+
+    private final Executor worker = TaskExecutor.shared().executor(TaskExecutor.Priority.PREFETCH);
+    private final AtomicInteger userRequests = new AtomicInteger();
+    /** Notified when the last user request has finished or a batch has been cancelled */
+    private final Object idle = new Object();
+    /** Recently prefetched channel ids and image urls, oldest first. Guarded by itself. */
+    private final LinkedHashMap<String, Boolean> prefetched = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > REMEMBERED;
+        }
+    };
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    private AtomicBoolean channelBatch = new AtomicBoolean();
+    private AtomicBoolean imageBatch = new AtomicBoolean();
+
+    /**
+     * Prefetch the schedules of the given channels that are not cached yet. Replaces any channel batch that has not
+     * finished yet.
+     * @param ids Ids of the channels to prefetch
+     * @param programMap Programme cache
+     */
+    public synchronized void prefetchChannels(List<String> ids,
+                                              ScheduleCache programMap) {
+        cancel(channelBatch);
+        AtomicBoolean cancelled = channelBatch = new AtomicBoolean();
+        List<String> copy = List.copyOf(ids);
+        worker.execute(() -> {
+            for (String id : copy) {
+                if (!awaitIdle(cancelled))
+                    return;
+                if (!programMap.containsKey(id) && UpdaterModel.fetchChannel(programMap, id) != null)
+                    prefetched(id);
+            }
+        });
+    }
+
+    /**
+     * Prefetch the given images into the ImageCache. Replaces any image batch that has not finished yet.
+     * @param imagePaths urls of the images to prefetch
+     */
+    public synchronized void prefetchImages(List<String> imagePaths) {
+        cancel(imageBatch);
+        AtomicBoolean cancelled = imageBatch = new AtomicBoolean();
+        List<String> copy = imagePaths.stream().distinct().toList();
+        worker.execute(() -> {
+            for (String imagePath : copy) {
+                if (!awaitIdle(cancelled))
+                    return;
+                if (!ImageCache.shared().isCached(imagePath) && ImageCache.shared().get(imagePath) != null)
+                    prefetched(imagePath);
+            }
+        });
+    }
+
+    /**
+     * Cancel everything that has not been prefetched yet. A fetch that is already running is allowed to finish since
+     * a user request may be sharing it.
+     */
+    public synchronized void cancel() {
+        cancel(channelBatch);
+        cancel(imageBatch);
+    }
+
+    /**
+     * Cancel a batch and wake it up if it is waiting for the user
+     * @param batch flag of the batch
+     */
+    private void cancel(AtomicBoolean batch) {
+        batch.set(true);
+        synchronized (idle) {
+            idle.notifyAll();
+        }
+    }
+
+    /**
+     * Tell the prefetcher that a user-initiated request has started. Prefetching pauses until it has finished.
+     */
+    public void userRequestStarted() {
+        userRequests.incrementAndGet();
+    }
+
+    /**
+     * Tell the prefetcher that a user-initiated request has finished.
+     */
+    public void userRequestFinished() {
+        if (userRequests.decrementAndGet() == 0) {
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return true while a user-initiated request is in flight
+     */
+    public boolean isUserWaiting() {
+        return userRequests.get() > 0;
+    }
+
+    /**
+     * Record that the user asked for a channel or an image. Counts as a hit if it had been prefetched.
+     * @param key channel id or image url
+     */
+    public void markUsed(String key) {
+        synchronized (prefetched) {
+            if (prefetched.remove(key) == null)
+                return;
+        }
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Record that a channel or an image has been prefetched
+     * @param key channel id or image url
+     */
+    void prefetched(String key) {
+        synchronized (prefetched) {
+            prefetched.put(key, true);
+        }
+        prefetches.incrementAndGet();
+    }
+
+    /**
+     * @return number of channels and images that have been prefetched
+     */
+    public long getPrefetches() {
+        return prefetches.get();
+    }
+
+    /**
+     * @return number of prefetched channels and images that the user later asked for
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Wait until no user request is in flight or the batch is cancelled
+     * @param cancelled flag of the batch that is waiting
+     * @return false if the batch was cancelled
+     */
+    boolean awaitIdle(AtomicBoolean cancelled) {
+        try {
+            synchronized (idle) {
+                while (userRequests.get() > 0 && !cancelled.get())
+                    idle.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !cancelled.get();
+    }
+}
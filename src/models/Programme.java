@@ -1,73 +1,92 @@
 package models;
 
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Objects;
+
 /**
- * Model/data class models.Programme represents a progamme object.
+ * Model/data class models.Programme represents a progamme object. A programme is a lightweight view of one row in a
+ * channel's Schedule and holds no data of its own.
  *
  * @author Alireza Ramezani, id19ari
- * @version 2.0
+ * @version 3.0
  */
-public class Programme {
-    public final String name;
-    public final String LTStart;
-    public final String LTEnd;
-    public final String imagePath;
-    public final String description;
+public final class Programme {
+    private final Schedule schedule;
+    private final int index;
 
-    private Programme(ProgrammeBuilder programmeBuilder) {
-        this.name = programmeBuilder.name;
-        this.LTStart = programmeBuilder.UTCstart;
-        this.LTEnd = programmeBuilder.UTCend;
-        this.imagePath = programmeBuilder.imagePath;
-        this.description = programmeBuilder.description;
+    Programme(Schedule schedule, int index) {
+        this.schedule = schedule;
+        this.index = index;
     }
 
     /**
-     * Builder that builds the programme and handles potential null arguments
+     * @return programme title
      */
-    public static class ProgrammeBuilder {
-        private final String name;
-        private final String UTCstart;
-        private final String UTCend;
-        private String imagePath;
-        private String description;
+    public String name() {
+        return schedule.name(index);
+    }
 
-        public ProgrammeBuilder(String name, String UTCstart, String UTCend) {
-            this.name = name;
-            this.UTCstart = UTCstart;
-            this.UTCend = UTCend;
-        }
+    /**
+     * @return start time in epoch seconds
+     */
+    public long start() {
+        return schedule.start(index);
+    }
+
+    /**
+     * @return end time in epoch seconds
+     */
+    public long end() {
+        return schedule.end(index);
+    }
 
-        /**
-         * Set the image path
-         * @param imagePath String with image path
-         * @return ProgrammeBuilder
-         */
-        public ProgrammeBuilder setImagePath(String imagePath) {
-            this.imagePath = imagePath;
-            return this;
-        }
+    /**
+     * @return start time in the local timezone
+     */
+    public LocalTime startTime() {
+        return LocalTime.ofInstant(Instant.ofEpochSecond(start()), ZoneId.systemDefault());
+    }
 
-        /**
-         * Set the image path
-         * @param description String with the description
-         * @return ProgrammeBuilder
-         */
-        public ProgrammeBuilder setDescription(String description) {
-            this.description = description;
-            return this;
-        }
+    /**
+     * @return end time in the local timezone
+     */
+    public LocalTime endTime() {
+        return LocalTime.ofInstant(Instant.ofEpochSecond(end()), ZoneId.systemDefault());
+    }
+
+    /**
+     * @return url of the programme image, or of the placeholder image
+     */
+    public String imagePath() {
+        return schedule.imagePath(index);
+    }
+
+    /**
+     * @return programme description, or the placeholder description
+     */
+    public String description() {
+        return schedule.description(index);
+    }
+
+    /**
+     * Two programmes are equal if all their content is equal
+     * @param o object to compare with
+     * @return true if equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Programme p))
+            return false;
+        return start() == p.start() && end() == p.end() && name().equals(p.name())
+                && imagePath().equals(p.imagePath()) && description().equals(p.description());
+    }
 
-        /**
-         * Build the programme, if imagepath or description is null, assign placeholders instead.
-         * @return Programme
-         */
-        public Programme buildProgramme() {
-            if (this.imagePath == null)
-                this.imagePath = "https://static-cdn.sr.se/images/" +
-                        "5380/a7898d6c-786f-4fcb-b68e-c5f56f4b3bef.jpg?preset=api-default-square";
-            if (this.description == null)
-                this.description = "Ingen beskrivning tillgänglig";
-            return new Programme(this);
-        }
+    @Override
+    public int hashCode() {
+        return Objects.hash(name(), start(), end(), imagePath(), description());
     }
 }
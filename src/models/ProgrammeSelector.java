@@ -1,9 +1,6 @@
 package models;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.net.URL;
 
 /**
  * Class MoreInfoListener is responsible for the action performed when a table row is
@@ -13,25 +10,24 @@ import java.net.URL;
  * @version 1.0
  */
 public class ProgrammeSelector {
+    private static final Histogram IMAGE_LOAD_TIME = Metrics.timer("image.load");
+
     /**
      * Save the programme id to the id attribute and selected row to the selRow attribute.
      * Start a SwingWorker and fetch information about the selected programme saved in programMap. Configure
-     * a JDialog in GUI with the fetched data.
+     * a JDialog in GUI with the fetched data. Images are served from the shared ImageCache, already scaled to the
+     * dialog size, and are only downloaded the first time they are requested.
      * @param imagePath String containing the path to fetch the image from.
      * @param selRow the selected table row
      */
     public BufferedImage getInfo(String imagePath, int selRow) {
-        final BufferedImage img;
         if (selRow > -1) {
-            try {
-                URL url = new URL(imagePath);
-                img = ImageIO.read(url);
-            } catch (IOException ex) {
-                return null;
-            }
+            long start = Metrics.start();
+            BufferedImage image = ImageCache.shared().get(imagePath);
+            IMAGE_LOAD_TIME.recordSince(start);
+            return image;
         } else {
             return null;
         }
-        return img;
     }
 }
\ No newline at end of file
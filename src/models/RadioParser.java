@@ -1,182 +1,271 @@
 package models;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStream;
+import java.net.URI;
 import java.time.*;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
- * Parser handles all the actions that requires fetching data from the API - such as channels and programmes -
- * and holds all the necessary connection-strings.
+ * Parser handles all the actions that requires fetching data from the API - such as channels and programmes.
+ * The URLs come from an ApiEndpoint.
  *
  * @author Alireza Ramezani, id19ari
  * @version 2.0
  */
 public class RadioParser {
+    private static final XMLInputFactory XML_FACTORY = createFactory();
+    private static final Histogram CHANNELS_PARSE_TIME = Metrics.timer("parse.channels");
+    private static final Histogram SCHEDULE_PARSE_TIME = Metrics.timer("parse.schedule");
+    private static final Metrics.Counter RETRIES = Metrics.counter("fetch.retries");
+
+    /** A schedule is fetched at most this many times before giving up */
+    private static final int ATTEMPTS = 3;
+    private static final long BACKOFF_BASE_MILLIS = 200;
+    private static final long BACKOFF_MAX_MILLIS = 2_000;
+
     /**
-     * Make a GET request to the SR API and return the response code
-     * @param url The url for the connection
-     * @return int response code
+     * Create the shared StAX factory. The factory is thread-safe once configured, so it is only created once instead
+     * of once per request. DTDs and external entities are never needed for the SR API and are therefore disabled.
+     * @return XMLInputFactory
      */
-    private static int fetch(URL url) {
-        try {
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.connect();
-            return connection.getResponseCode();
-        } catch (IOException e) {
-            return 0;
-        }
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
     }
 
+    private final ApiClient client;
+    private final ApiEndpoint endpoint;
+
     /**
-     * Fetch XML data from API and parse it
-     * @param url URl to fetch from
-     * @return Document consisting of parsed XML data
+     * Create a parser that fetches from the configured endpoint through the shared, pooled ApiClient
      */
-    public static Document parse(URL url) {
-        try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            return dBuilder.parse(url.openStream());
-        } catch (ParserConfigurationException | IOException | SAXException e) {
-            return null;
-        }
+    public RadioParser() {
+        this(ApiClient.shared());
+    }
+
+    /**
+     * Create a parser that fetches from the configured endpoint through the given client
+     * @param client client used for all requests
+     */
+    public RadioParser(ApiClient client) {
+        this(client, ApiEndpoint.configured());
     }
 
     /**
-     * Read all the channel tags from the current page in the parsed document
+     * Create a parser that fetches from the given endpoint through the given client
+     * @param client client used for all requests
+     * @param endpoint endpoint that the URLs are built from
+     */
+    public RadioParser(ApiClient client, ApiEndpoint endpoint) {
+        this.client = client;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Open a streaming XML reader directly on top of an input stream. Nothing is buffered into a document, the caller
+     * pulls the events it needs in a single pass.
+     * @param in Stream with XML data
+     * @return XMLStreamReader positioned at the start of the document
+     * @throws XMLStreamException if the reader could not be created
+     */
+    static XMLStreamReader parse(InputStream in) throws XMLStreamException {
+        return XML_FACTORY.createXMLStreamReader(in);
+    }
+
+    /**
+     * Read all the channel tags from the stream
      * @param channels ArrayList in which the channels are added.
-     * @param doc parsed document
+     * @param reader streaming XML reader
+     * @param onChannel Called with every channel as soon as it has been read
+     * @throws XMLStreamException if the XML is malformed
      */
-    private void readChannels(ArrayList<Channel> channels, Document doc) {
-        NodeList nL = doc.getElementsByTagName("channel");
-        for (int i = 0; i < nL.getLength(); i++) {
-            Element chE = (Element) nL.item(i);
-            channels.add(new Channel(
-                    chE.getAttribute("id"),
-                    chE.getAttribute("name")
-            ));
+    void readChannels(ArrayList<Channel> channels, XMLStreamReader reader, Consumer<Channel> onChannel)
+            throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("channel")) {
+                Channel channel = new Channel(
+                        attribute(reader, "id"),
+                        attribute(reader, "name")
+                );
+                channels.add(channel);
+                onChannel.accept(channel);
+            }
         }
     }
 
     /**
-     * Read programmes from the parsed document. Convert the timezones, if the programmes start 6 hours prior or 12
-     * hours later than the current time, build a new programme and add it to the arraylist
-     * @param doc Parsed document
+     * Read programmes from the stream. Every scheduledepisode is read in one pass, its child tags are collected as
+     * they appear and the programme is added to the schedule, with its times in epoch seconds, when the closing tag is
+     * reached. Every programme is kept, the time window shown to the user is applied when the table is built.
+     * @param reader streaming XML reader
+     * @return Schedule with the programmes
+     * @throws XMLStreamException if the XML is malformed
      */
-    private ArrayList<Programme> readProgrammes(Document doc) {
-        ArrayList<Programme> programmes = new ArrayList<>();
-        NodeList nodeList = doc.getElementsByTagName("scheduledepisode");
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Element pE = (Element) nodeList.item(i);
-
-            ZonedDateTime startTime =
-                    Instant.parse(pE.getElementsByTagName("starttimeutc").item(0).getTextContent())
-                            .atZone(ZoneId.systemDefault());
-            ZonedDateTime endTime =
-                    Instant.parse(pE.getElementsByTagName("endtimeutc").item(0).getTextContent())
-                            .atZone(ZoneId.systemDefault());
-
-            ZonedDateTime earliestEndTime = ZonedDateTime.now().minusHours(6);
-            ZonedDateTime latestStartTime = ZonedDateTime.now().plusHours(12);
-
-            //System.out.println("StartTime: "+startTime+"|EndTime: "+endTime+"|EarliestStartTime: "+ earliestStartTime+"|LatestStartTime: "+latestStartTime+"|LocalTime: "+LocalDateTime.now());
-            //System.out.println("Currenttime:"+LocalDateTime.now()+"|Endtime:"+endTime+"|Diff"+ChronoUnit.HOURS.between(LocalDateTime.now(), endTime)+"|Title:"+pE.getElementsByTagName("title").item(0).getTextContent());
-
-            if (endTime.isAfter(earliestEndTime) && startTime.isBefore(latestStartTime)) {
-                Programme.ProgrammeBuilder progBuilder = new Programme.ProgrammeBuilder(
-                        pE.getElementsByTagName("title").item(0).getTextContent(),
-                        startTime.toLocalTime().toString(),
-                        endTime.toLocalTime().toString()
-                );
+    Schedule readProgrammes(XMLStreamReader reader) throws XMLStreamException {
+        Schedule.ScheduleBuilder programmes = new Schedule.ScheduleBuilder();
 
-                if (pE.getElementsByTagName("imageurl").item(0)!=null)
-                    progBuilder = progBuilder.setImagePath(pE.getElementsByTagName("imageurl").
-                                    item(0).getTextContent());
+        boolean inEpisode = false;
+        String title = null, start = null, end = null, imageUrl = null, description = null;
 
-                if (pE.getElementsByTagName("description").item(0)!=null)
-                    progBuilder = progBuilder.setDescription(pE.getElementsByTagName("description").
-                            item(0).getTextContent());
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String tag = reader.getLocalName();
+                if (tag.equals("scheduledepisode")) {
+                    inEpisode = true;
+                    title = start = end = imageUrl = description = null;
+                } else if (inEpisode) {
+                    switch (tag) {
+                        case "title" -> title = title == null ? reader.getElementText() : title;
+                        case "starttimeutc" -> start = start == null ? reader.getElementText() : start;
+                        case "endtimeutc" -> end = end == null ? reader.getElementText() : end;
+                        case "imageurl" -> imageUrl = imageUrl == null ? reader.getElementText() : imageUrl;
+                        case "description" ->
+                                description = description == null ? reader.getElementText() : description;
+                        default -> { }
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && inEpisode
+                    && reader.getLocalName().equals("scheduledepisode")) {
+                inEpisode = false;
+                // the response may already be buffered, in which case only this notices that the fetch was abandoned
+                if (Thread.currentThread().isInterrupted())
+                    throw new XMLStreamException("Interrupted while parsing");
+                if (title == null || start == null || end == null)
+                    continue;
 
-                Programme prog = progBuilder.buildProgramme();
-                programmes.add(prog);
+                programmes.addProgramme(title, Instant.parse(start).getEpochSecond(),
+                        Instant.parse(end).getEpochSecond(), imageUrl, description);
             }
         }
-        return programmes;
+        return programmes.buildSchedule();
+    }
+
+    /**
+     * Read an attribute from the current start tag
+     * @param reader streaming XML reader positioned on a start tag
+     * @param name attribute name
+     * @return the attribute value, or an empty string if missing (same as Element.getAttribute)
+     */
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
     }
 
     /**
      * Get all the channels available in the SR API.
-     * Fetch the response code, if the response code is 200, proceed to fetch data and parse XML page into W3C
-     * Document. Parse the total number of pages in the document and proceed to get all elements with the channel
-     * tag into a NodeList. Then loop through all nodes and create new models.Channel objects to be saved in the channels set.
-     * Replicate the process for each page in the API.
+     * Make a single request through the ApiClient and stream the XML page through
+     * a StAX reader. Every channel tag is turned into a new models.Channel object to be saved in the channels list.
      * @return List of channels
      */
     public ArrayList<Channel> fetchChannels() {
-        ArrayList<Channel> channels = new ArrayList<>();
-        try {
-                URL url = new URL("http://api.sr.se/api/v2/channels/?pagination=false");
-                int responsecode = fetch(url);
+        return fetchChannels(channel -> { });
+    }
 
-                if (responsecode != 200) {
+    /**
+     * Get all the channels available in the SR API, handing every channel to a consumer as soon as it has been parsed
+     * so that the caller can show it before the whole response is read. If the channel list has not changed since the
+     * last fetch, every cached channel is handed to the consumer instead. A request that fails before any channel was
+     * parsed is tried again like in updateChannel.
+     * @param onChannel Called with every channel, in order
+     * @return List of channels
+     */
+    public ArrayList<Channel> fetchChannels(Consumer<Channel> onChannel) {
+        AtomicBoolean streamed = new AtomicBoolean();
+        URI uri = endpoint.channels();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                ArrayList<Channel> channels = client.get("channels", uri, in -> {
+                    streamed.set(true);
+                    long start = Metrics.start();
+                    ArrayList<Channel> parsed = new ArrayList<>();
+                    XMLStreamReader reader = parse(in);
+                    readChannels(parsed, reader, onChannel);
+                    reader.close();
+                    CHANNELS_PARSE_TIME.recordSince(start);
+                    return parsed;
+                });
+                if (!streamed.get())
+                    channels.forEach(onChannel);
+                return channels;
+            } catch (ApiClient.ClientErrorException e) {
+                return null;
+            } catch (IOException e) {
+                // channels already handed to the consumer cannot be taken back, so a broken stream is not retried
+                if (streamed.get() || attempt + 1 >= ATTEMPTS || !client.isAvailable(uri) || !backOff(attempt))
                     return null;
-                } else {
-                    Document doc = parse(url);
-                    assert doc != null;
-                    readChannels(channels, doc);
-                }
-        } catch (IOException e) {
-            return null;
+                RETRIES.increment();
+            }
         }
-        return channels;
     }
 
     /**
      * Method updateChannel responsible for updating, or fetching, all programs win a channel based on the specified
-     * channel ID. Parse all elements with the scheduledepisode tag into a NodeList. For every episode with a time
-     * difference higher than -6 or lower than 12 to the current localtime, create a new Programme model object and save in
-     * programMap and the programmes HashSet.
+     * channel ID. The whole of yesterday, today and tomorrow is fetched, so that the time window shown to the user
+     * can move forward without fetching again. Stream all elements with the scheduledepisode tag from the response
+     * into a Schedule and save it in programMap. If the schedule has not changed since the last fetch, the server answers
+     * 304 and the cached programmes are reused; a channel that is no longer cached is fetched unconditionally. If the
+     * server sends a schedule with the same content as the cached one, the cached instance is kept and returned. A
+     * failed fetch is tried again after a short, jittered and growing wait, unless the circuit breaker of the endpoint
+     * has opened or the server refused the request itself with a 4xx code.
      * @param id ID of the channel to fetch from
-     * @param programMap HashMap of all the fetched programmes.
-     * @return HashSet consisting of all the fetched programmes.
+     * @param programMap Cache of all the fetched programmes.
+     * @return Schedule consisting of all the fetched programmes.
      */
-    public ArrayList<Programme> updateChannel(String id, ConcurrentHashMap<String, ArrayList<Programme>> programMap){
-        ArrayList<Programme> programmes = new ArrayList<>();
+    public Schedule updateChannel(String id, ScheduleCache programMap){
+        Schedule programmes = Schedule.EMPTY;
         if (!id.isEmpty()) {
             LocalDate today = LocalDate.now();
-            try {
-                URL url = new URL("http://api.sr.se/v2/scheduledepisodes?channelid=" + id + "&pagination=false"
-                        + "&fromDate="
-                        + (LocalTime.now().isBefore(LocalTime.parse("07:00")) ? today.minusDays(1) : today)
-                        + "&toDate="
-                        + (LocalTime.now().isBefore(LocalTime.parse("07:00")) ? today : today.plusDays(1))
-                );
-                int responsecode = fetch(url);
-                if (responsecode != 200) {
+            URI uri = endpoint.schedule(id, today.minusDays(1), today.plusDays(1));
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    programmes = client.get("schedule:" + id, uri, in -> {
+                        long start = Metrics.start();
+                        XMLStreamReader reader = parse(in);
+                        Schedule parsed = readProgrammes(reader);
+                        reader.close();
+                        SCHEDULE_PARSE_TIME.recordSince(start);
+                        return parsed;
+                    }, () -> programMap.get(id));
+                    break;
+                } catch (ApiClient.ClientErrorException ex) {
                     return null;
-                } else {
-                    Document doc = parse(url);
-                    assert doc != null;
-                    programmes = readProgrammes(doc);
-                    programMap.put(id, programmes);
+                } catch (IOException ex) {
+                    if (attempt + 1 >= ATTEMPTS || !client.isAvailable(uri) || !backOff(attempt))
+                        return null;
+                    RETRIES.increment();
                 }
-            } catch (IOException ex) {
-                return null;
             }
+            programmes = programMap.put(id, programmes);
         }
         return programmes;
     }
+
+    /**
+     * Wait before the next attempt. The wait is drawn at random between zero and an exponentially growing cap ("full
+     * jitter"), so that channels failing at the same moment do not retry in lockstep.
+     * @param attempt number of the attempt that just failed, counting from 0
+     * @return false if the thread was interrupted while waiting
+     */
+    private static boolean backOff(int attempt) {
+        long cap = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << attempt);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 }
@@ -0,0 +1,179 @@
+package models;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RefreshScheduler keeps every cached channel fresh by refreshing each channel on its own timetable instead of all of
+ * them at once. After every refresh the channel's next refresh is computed from its schedule and how recently it was
+ * viewed:
+ * <ul>
+ *     <li>A channel viewed in the last 30 minutes must never be more than 15 minutes old, and is also refreshed
+ *     shortly before its current programme ends, which is when late changes to the schedule show up.</li>
+ *     <li>Any other channel is refreshed every two hours.</li>
+ * </ul>
+ * Every delay gets up to 10% random jitter so that channels fetched together drift apart, and channels that are
+ * already overdue when the scheduler starts are spread over the first few minutes. Refreshes run on a small pool of
+ * daemon threads, which also caps how many run at the same time.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class RefreshScheduler implements ScheduleCache.Listener {
+    static final long VIEWED_BUDGET = UpdaterModel.FRESH_MILLIS;
+    static final long UNVIEWED_BUDGET = Duration.ofHours(2).toMillis();
+    static final long RECENTLY_VIEWED = Duration.ofMinutes(30).toMillis();
+    static final long LEAD = Duration.ofMinutes(2).toMillis();
+    static final long MIN_DELAY = Duration.ofMinutes(1).toMillis();
+    static final long OVERDUE_SPREAD = Duration.ofMinutes(5).toMillis();
+    static final double JITTER = 0.1;
+
+    private static final Metrics.Counter REFRESHES = Metrics.counter("refresh.requests");
+    private static final Histogram STALENESS = Metrics.histogram("refresh.staleness", "s");
+
+    private final ScheduleCache programMap;
+    private final ScheduledThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> lastViewed = new ConcurrentHashMap<>();
+
+    /**
+     * Create a scheduler, it does nothing until it is started
+     * @param programMap Programme cache
+     * @param parallelism the most channels refreshed at the same time
+     */
+    public RefreshScheduler(ScheduleCache programMap, int parallelism) {
+        this.programMap = programMap;
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, parallelism),
+                TaskExecutor.threadFactory("channel-refresh", TaskExecutor.Priority.BACKGROUND));
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Schedule every channel already in the cache and every channel added to it later
+     */
+    public void start() {
+        programMap.addListener(this);
+        for (String id : programMap.keySet())
+            reschedule(id, 0);
+    }
+
+    /**
+     * Stop all refreshes. A refresh that is running is allowed to finish.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run a task at a fixed rate on the scheduler's threads, e.g. housekeeping of the cache
+     * @param period time between two runs
+     * @param task task to run
+     */
+    public void every(Duration period, Runnable task) {
+        executor.scheduleAtFixedRate(task, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tell the scheduler the user is looking at a channel. Viewed channels get the shorter staleness budget; if the
+     * channel is already older than that it is refreshed right away.
+     * @param id channel id
+     */
+    public void viewed(String id) {
+        lastViewed.put(id, System.currentTimeMillis());
+        ScheduledFuture<?> next = pending.get(id);
+        if (next == null || next.getDelay(TimeUnit.MILLISECONDS) > nextDelayMillis(id, System.currentTimeMillis()))
+            reschedule(id, 0);
+    }
+
+    @Override
+    public void scheduleReplaced(String id, Schedule previous, Schedule current, ScheduleDiff diff) {
+        if (current == null) {
+            ScheduledFuture<?> next = pending.remove(id);
+            if (next != null)
+                next.cancel(false);
+        } else if (previous == null) {
+            reschedule(id, 0);
+        }
+    }
+
+    /**
+     * Compute how long to wait before refreshing a channel, without jitter
+     * @param id channel id
+     * @param now current time in epoch milliseconds
+     * @return delay in milliseconds, 0 if the channel is due now
+     */
+    long nextDelayMillis(String id, long now) {
+        long age = programMap.getAgeMillis(id);
+        if (age < 0)
+            return 0;
+        Long viewedAt = lastViewed.get(id);
+        boolean viewed = viewedAt != null && now - viewedAt < RECENTLY_VIEWED;
+        long delay = (viewed ? VIEWED_BUDGET : UNVIEWED_BUDGET) - age;
+        if (viewed) {
+            long due = currentProgrammeEnd(programMap.get(id), now / 1000) * 1000 - LEAD;
+            if (due > now - age)
+                delay = Math.min(delay, due - now);
+        }
+        return Math.max(0, delay);
+    }
+
+    /**
+     * @param schedule the channel's schedule
+     * @param now current time in epoch seconds
+     * @return when the programme airing now ends, in epoch seconds, or 0 if nothing is airing
+     */
+    private static long currentProgrammeEnd(Schedule schedule, long now) {
+        if (schedule == null)
+            return 0;
+        long end = 0;
+        for (int i = 0; i < schedule.size() && schedule.start(i) <= now; i++) {
+            if (schedule.end(i) > now && (end == 0 || schedule.end(i) < end))
+                end = schedule.end(i);
+        }
+        return end;
+    }
+
+    /**
+     * Replace the pending refresh of a channel with one at its next due time, with jitter
+     * @param id channel id
+     * @param floor the shortest delay allowed in milliseconds, so that a failed refresh is not retried at once
+     */
+    private void reschedule(String id, long floor) {
+        if (executor.isShutdown())
+            return;
+        long now = System.currentTimeMillis();
+        long delay = nextDelayMillis(id, now);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (delay == 0) {
+            Long viewedAt = lastViewed.get(id);
+            boolean viewed = viewedAt != null && now - viewedAt < RECENTLY_VIEWED;
+            delay = viewed ? 0 : random.nextLong(OVERDUE_SPREAD);
+        } else {
+            delay = Math.max(MIN_DELAY, delay + (long) (delay * JITTER * (2 * random.nextDouble() - 1)));
+        }
+        delay = Math.max(floor, delay);
+        ScheduledFuture<?> next = executor.schedule(() -> refresh(id), delay, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = pending.put(id, next);
+        if (previous != null)
+            previous.cancel(false);
+    }
+
+    private void refresh(String id) {
+        try {
+            if (!programMap.containsKey(id))
+                return;
+            REFRESHES.increment();
+            STALENESS.record(programMap.getAgeMillis(id) / 1000);
+            UpdaterModel.fetchChannel(programMap, id);
+        } finally {
+            if (programMap.containsKey(id))
+                reschedule(id, MIN_DELAY);
+            else
+                pending.remove(id);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package models;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Schedule is the immutable, columnar store for all programmes of one channel. Start and end times are kept as epoch
+ * seconds in primitive arrays and all strings go through the StringPool, so placeholders and repeated titles are only
+ * stored once. The programmes handed out are lightweight views into the arrays.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public final class Schedule extends AbstractList<Programme> implements RandomAccess {
+    static final String PLACEHOLDER_IMAGE = StringPool.intern("https://static-cdn.sr.se/images/" +
+            "5380/a7898d6c-786f-4fcb-b68e-c5f56f4b3bef.jpg?preset=api-default-square");
+    static final String PLACEHOLDER_DESCRIPTION = StringPool.intern("Ingen beskrivning tillgänglig");
+
+    public static final Schedule EMPTY = new ScheduleBuilder().buildSchedule();
+
+    private final int size;
+    private final long[] starts;
+    private final long[] ends;
+    private final String[] names;
+    private final String[] imagePaths;
+    private final String[] descriptions;
+    private long memoryEstimate = -1;
+
+    private Schedule(ScheduleBuilder builder) {
+        this.size = builder.size;
+        this.starts = Arrays.copyOf(builder.starts, size);
+        this.ends = Arrays.copyOf(builder.ends, size);
+        this.names = Arrays.copyOf(builder.names, size);
+        this.imagePaths = Arrays.copyOf(builder.imagePaths, size);
+        this.descriptions = Arrays.copyOf(builder.descriptions, size);
+    }
+
+    @Override
+    public Programme get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        return new Programme(this, index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the programmes that air during part of a time window, without copying them
+     * @param from start of the window in epoch seconds
+     * @param to end of the window in epoch seconds
+     * @return read-only view of the programmes that end after from and start before to
+     */
+    public List<Programme> between(long from, long to) {
+        int hi = firstStartingAtOrAfter(to);
+        int lo = Math.min(firstStartingAtOrAfter(from), hi);
+        while (lo > 0 && ends[lo - 1] > from)
+            lo--;
+        return subList(lo, hi);
+    }
+
+    /**
+     * Drop the programmes that ended at or before the given time
+     * @param time time in epoch seconds
+     * @return a schedule without the ended programmes, or this schedule if no programme has ended
+     */
+    public Schedule endingAfter(long time) {
+        ScheduleBuilder builder = new ScheduleBuilder();
+        for (int i = 0; i < size; i++) {
+            if (ends[i] > time)
+                builder.addProgramme(names[i], starts[i], ends[i], imagePaths[i], descriptions[i]);
+        }
+        return builder.size == size ? this : builder.buildSchedule();
+    }
+
+    /**
+     * Estimate the memory used by the schedule, assuming a 64-bit JVM with compressed references and strings with
+     * one byte per character. Every distinct string is counted once, even though pooled strings may be shared with
+     * other schedules, so the estimate errs on the high side. The placeholders are always shared and not counted.
+     * @return estimated size in bytes
+     */
+    public long getMemoryEstimate() {
+        long bytes = memoryEstimate;
+        if (bytes < 0) {
+            // the object, two long arrays and three reference arrays
+            bytes = 32 + 2 * (16 + size * 8L) + 3 * (16 + size * 4L);
+            IdentityHashMap<String, Boolean> counted = new IdentityHashMap<>();
+            counted.put(PLACEHOLDER_IMAGE, true);
+            counted.put(PLACEHOLDER_DESCRIPTION, true);
+            for (String[] column : new String[][] {names, imagePaths, descriptions}) {
+                for (int i = 0; i < size; i++) {
+                    if (column[i] != null && counted.put(column[i], true) == null)
+                        bytes += 40 + column[i].length();
+                }
+            }
+            memoryEstimate = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Binary search for the first programme that starts at or after the given time
+     * @param time time in epoch seconds
+     * @return index of the programme, or size if there is none
+     */
+    private int firstStartingAtOrAfter(long time) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    long start(int index) {
+        return starts[index];
+    }
+
+    long end(int index) {
+        return ends[index];
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    String imagePath(int index) {
+        return imagePaths[index];
+    }
+
+    String description(int index) {
+        return descriptions[index];
+    }
+
+    /**
+     * Builder that collects programmes into growing arrays and handles potential null arguments
+     */
+    public static class ScheduleBuilder {
+        private int size;
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+        private String[] names = new String[16];
+        private String[] imagePaths = new String[16];
+        private String[] descriptions = new String[16];
+
+        /**
+         * Add a programme to the schedule. If imagepath or description is null, assign placeholders instead.
+         * @param name programme title
+         * @param start start time in epoch seconds
+         * @param end end time in epoch seconds
+         * @param imagePath String with image path, may be null
+         * @param description String with the description, may be null
+         * @return ScheduleBuilder
+         */
+        public ScheduleBuilder addProgramme(String name, long start, long end, String imagePath, String description) {
+            if (size == starts.length) {
+                int capacity = size * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                names = Arrays.copyOf(names, capacity);
+                imagePaths = Arrays.copyOf(imagePaths, capacity);
+                descriptions = Arrays.copyOf(descriptions, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            names[size] = StringPool.intern(name);
+            imagePaths[size] = imagePath == null ? PLACEHOLDER_IMAGE : StringPool.intern(imagePath);
+            descriptions[size] = description == null ? PLACEHOLDER_DESCRIPTION : StringPool.intern(description);
+            size++;
+            return this;
+        }
+
+        /**
+         * Build the schedule, trimming the arrays to the number of programmes. The programmes are ordered by start
+         * time, which the API normally already does.
+         * @return Schedule
+         */
+        public Schedule buildSchedule() {
+            sortByStart();
+            return new Schedule(this);
+        }
+
+        /**
+         * Reorder all columns by start time, unless they are already in order
+         */
+        private void sortByStart() {
+            boolean sorted = true;
+            for (int i = 1; i < size && sorted; i++)
+                sorted = starts[i - 1] <= starts[i];
+            if (sorted)
+                return;
+
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+
+            long[] s = new long[size], e = new long[size];
+            String[] n = new String[size], im = new String[size], d = new String[size];
+            for (int i = 0; i < size; i++) {
+                s[i] = starts[order[i]];
+                e[i] = ends[order[i]];
+                n[i] = names[order[i]];
+                im[i] = imagePaths[order[i]];
+                d[i] = descriptions[order[i]];
+            }
+            starts = s;
+            ends = e;
+            names = n;
+            imagePaths = im;
+            descriptions = d;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package models;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ScheduleCache holds the cached schedule of every fetched channel, keyed by channel id. Besides storing the
+ * schedules it tells its listeners whenever a channel's schedule is replaced or removed, so that indexes built on top
+ * of the cache can be kept up to date incrementally. A new schedule that does not differ from the cached one is
+ * dropped, the cached instance is kept and nobody is notified.
+ * <p>
+ * The cache is bounded by an estimate of the memory its schedules use, radioinfo.cache.maxBytes (default 64 MB).
+ * When a new channel does not fit, the least recently used channels are candidates for eviction, but a candidate is
+ * only evicted if the new channel has been asked for at least as often recently, as estimated by a FrequencySketch
+ * (the TinyLFU admission policy). Otherwise the new channel is not cached at all. This keeps a burst of channels that
+ * are fetched once, e.g. by warming or prefetching, from pushing out the channels the user keeps coming back to.
+ * Evicted channels are removed like any other, so the listeners, and with them the background refresh, drop them too.
+ * <p>
+ * Lookups do not take the cache lock. They only record the channel in a small ring buffer, and the buffered lookups
+ * are counted in the FrequencySketch and moved to the front of the recency order the next time the cache is written
+ * to, before any admission or eviction decision. The buffer is lossy: when lookups come faster than writes, the
+ * oldest ones are overwritten and never counted, which only makes the policy a little less exact.
+ * <p>
+ * Listeners are told about the changes in the order they were made to the cache, one change at a time, so the diff of
+ * every event applies to the schedule of the event before it, even when several threads write to the same channel.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ScheduleCache {
+    private static final int READ_BUFFER = 256;
+
+    private final ConcurrentHashMap<String, Schedule> schedules = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> refreshedAt = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    /** Changes not delivered to the listeners yet, in the order they were made. Guarded by sizes. */
+    private final ArrayDeque<Event> events = new ArrayDeque<>();
+    /** Held while delivering events, so that only one thread delivers at a time */
+    private final ReentrantLock delivery = new ReentrantLock();
+    private final AtomicLong unchangedRefreshes = new AtomicLong();
+    private final AtomicLong changedRefreshes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    /** Estimated size of every cached schedule. Guarded by itself, like recency and bytes. */
+    private final HashMap<String, Long> sizes = new HashMap<>();
+    /** The cached channels, least recently looked up or admitted first */
+    private final LinkedHashMap<String, Boolean> recency = new LinkedHashMap<>(64, 0.75f, true);
+    /** Guarded by sizes */
+    private final FrequencySketch frequencies = new FrequencySketch(512);
+    /** Channels looked up since the buffer was last drained, at readIndex modulo READ_BUFFER */
+    private final AtomicReferenceArray<String> reads = new AtomicReferenceArray<>(READ_BUFFER);
+    private final AtomicLong readIndex = new AtomicLong();
+    /** Index of the first lookup in the read buffer that has not been drained. Guarded by sizes. */
+    private long drainedUpTo;
+    private final long maxBytes;
+    private long bytes;
+    /** Programmes that ended at or before this time, in epoch seconds, are never cached */
+    private volatile long horizon;
+
+    /**
+     * Create a cache bounded by radioinfo.cache.maxBytes, 64 MB by default
+     */
+    public ScheduleCache() {
+        this(Long.getLong("radioinfo.cache.maxBytes", 64L << 20));
+    }
+
+    /**
+     * @param maxBytes the most memory the cached schedules may use, as estimated by Schedule.getMemoryEstimate
+     */
+    public ScheduleCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Listener that is told about every change to the cache
+     */
+    public interface Listener {
+        /**
+         * Called after a channel's schedule has been replaced, on the thread that replaced it
+         * @param id channel id
+         * @param previous the schedule before, or null if the channel was not cached
+         * @param current the schedule after, or null if the channel was removed
+         * @param diff what was added, removed and changed
+         */
+        void scheduleReplaced(String id, Schedule previous, Schedule current, ScheduleDiff diff);
+    }
+
+    /**
+     * A change to the cache that the listeners have not been told about yet
+     */
+    private record Event(String id, Schedule previous, Schedule current, ScheduleDiff diff) { }
+
+    /**
+     * @param listener listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param id channel id
+     * @return the cached schedule, or null if the channel is not cached
+     */
+    public Schedule get(String id) {
+        return schedules.get(id);
+    }
+
+    /**
+     * Get the cached schedule of a channel on behalf of someone who wants to see it, a user or a client. Unlike get,
+     * this counts as a use of the channel for the eviction policy and for the hit rate. It does not block.
+     * @param id channel id
+     * @return the cached schedule, or null if the channel is not cached
+     */
+    public Schedule lookup(String id) {
+        reads.lazySet((int) (readIndex.getAndIncrement() & (READ_BUFFER - 1)), id);
+        Schedule schedule = schedules.get(id);
+        if (schedule == null)
+            misses.increment();
+        else
+            hits.increment();
+        return schedule;
+    }
+
+    /**
+     * Count the lookups in the read buffer in the FrequencySketch and move their channels to the front of the recency
+     * order. Must be called with the sizes lock held.
+     */
+    private void drainReads() {
+        long end = readIndex.get();
+        for (long i = Math.max(drainedUpTo, end - READ_BUFFER); i < end; i++) {
+            // null if the lookup has taken its index but not written it yet; it is counted at a later drain, if at all
+            String id = reads.getAndSet((int) (i & (READ_BUFFER - 1)), null);
+            if (id != null) {
+                frequencies.increment(id);
+                recency.get(id);
+            }
+        }
+        drainedUpTo = end;
+    }
+
+    /**
+     * @param id channel id
+     * @return true if the channel is cached
+     */
+    public boolean containsKey(String id) {
+        return schedules.containsKey(id);
+    }
+
+    /**
+     * @param id channel id
+     * @return milliseconds since the channel's schedule was last fetched, or -1 if the channel is not cached
+     */
+    public long getAgeMillis(String id) {
+        Long at = refreshedAt.get(id);
+        return at == null ? -1 : Math.max(0, System.currentTimeMillis() - at);
+    }
+
+    /**
+     * Replace the schedule of a channel with one that was just fetched, unless the new schedule has the same content
+     * as the cached one. Either way the channel counts as fetched now. Programmes that ended before the last
+     * evictEndedBefore are left out, so that a refresh of a trimmed channel compares equal to what is cached.
+     * @param id channel id
+     * @param schedule new schedule
+     * @return the schedule that is cached afterwards: the previous instance if nothing changed, otherwise the new one.
+     * A new channel that was not admitted to the cache gets its new schedule back.
+     */
+    public Schedule put(String id, Schedule schedule) {
+        return put(id, schedule, System.currentTimeMillis());
+    }
+
+    /**
+     * Replace the schedule of a channel, unless the new schedule has the same content as the cached one
+     * @param id channel id
+     * @param schedule new schedule
+     * @param fetchedAt when the schedule was fetched, in epoch milliseconds
+     * @return the schedule that is cached afterwards: the previous instance if nothing changed, otherwise the new one
+     */
+    private Schedule put(String id, Schedule schedule, long fetchedAt) {
+        long h = horizon;
+        if (h > 0)
+            schedule = schedule.endingAfter(h);
+        Schedule previous;
+        synchronized (sizes) {
+            drainReads();
+            previous = schedules.get(id);
+            if (previous == null && !admit(id, schedule.getMemoryEstimate())) {
+                rejections.incrementAndGet();
+                return schedule;
+            }
+            refreshedAt.put(id, fetchedAt);
+            ScheduleDiff diff = ScheduleDiff.compute(previous, schedule);
+            if (previous != null && diff.isEmpty()) {
+                unchangedRefreshes.incrementAndGet();
+                return previous;
+            }
+            schedules.put(id, schedule);
+            long size = schedule.getMemoryEstimate();
+            Long before = sizes.put(id, size);
+            bytes += size - (before == null ? 0 : before);
+            if (before == null)
+                recency.put(id, true);
+            events.add(new Event(id, previous, schedule, diff));
+            evictUntilFits(id);
+        }
+        if (previous != null)
+            changedRefreshes.incrementAndGet();
+        deliver();
+        return schedule;
+    }
+
+    /**
+     * Decide whether a new channel may be cached. It is admitted if it fits, or if every channel that would have to
+     * be evicted to make room for it, least recently used first, has been asked for at most as often as it.
+     * @param id channel id
+     * @param size estimated size of its schedule
+     * @return true if the channel should be cached
+     */
+    private boolean admit(String id, long size) {
+        if (size > maxBytes)
+            return false;
+        long needed = bytes + size - maxBytes;
+        if (needed <= 0)
+            return true;
+        int frequency = frequencies.frequency(id);
+        for (Iterator<String> it = recency.keySet().iterator(); it.hasNext() && needed > 0; ) {
+            String victim = it.next();
+            if (frequencies.frequency(victim) > frequency)
+                return false;
+            needed -= sizes.get(victim);
+        }
+        return true;
+    }
+
+    /**
+     * Evict the least recently used channels until the cache fits in its budget again, sparing one channel
+     * @param spared the channel that was just put
+     */
+    private void evictUntilFits(String spared) {
+        for (Iterator<String> it = recency.keySet().iterator(); it.hasNext() && bytes > maxBytes; ) {
+            String victim = it.next();
+            if (victim.equals(spared))
+                continue;
+            it.remove();
+            bytes -= sizes.remove(victim);
+            refreshedAt.remove(victim);
+            Schedule evicted = schedules.remove(victim);
+            events.add(new Event(victim, evicted, null, ScheduleDiff.compute(evicted, null)));
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Replace the schedules of several channels that were just fetched
+     * @param all schedules per channel id
+     */
+    public void putAll(Map<String, Schedule> all) {
+        putAll(all, System.currentTimeMillis());
+    }
+
+    /**
+     * Replace the schedules of several channels that were fetched at the given time, e.g. when loading a snapshot
+     * @param all schedules per channel id
+     * @param fetchedAt when the schedules were fetched, in epoch milliseconds
+     */
+    public void putAll(Map<String, Schedule> all, long fetchedAt) {
+        all.forEach((id, schedule) -> put(id, schedule, fetchedAt));
+    }
+
+    /**
+     * Remove a channel from the cache
+     * @param id channel id
+     */
+    public void remove(String id) {
+        Schedule previous;
+        synchronized (sizes) {
+            previous = schedules.remove(id);
+            refreshedAt.remove(id);
+            recency.remove(id);
+            Long size = sizes.remove(id);
+            if (size != null)
+                bytes -= size;
+            if (previous != null)
+                events.add(new Event(id, previous, null, ScheduleDiff.compute(previous, null)));
+        }
+        deliver();
+    }
+
+    /**
+     * Drop the programmes that ended at or before the given time from every cached schedule, and from every schedule
+     * put afterwards. Trimming is not counted as a refresh. A channel with no programmes left is removed, so that it
+     * is fetched again the next time it is looked up instead of being served empty.
+     * @param time time in epoch seconds
+     */
+    public void evictEndedBefore(long time) {
+        if (time > horizon)
+            horizon = time;
+        for (String id : schedules.keySet()) {
+            synchronized (sizes) {
+                // the channel may have been refreshed, removed or evicted since the loop saw it
+                Schedule original = schedules.get(id);
+                if (original == null)
+                    continue;
+                Schedule trimmed = original.endingAfter(time);
+                if (trimmed == original)
+                    continue;
+                if (trimmed.isEmpty()) {
+                    schedules.remove(id);
+                    refreshedAt.remove(id);
+                    recency.remove(id);
+                    bytes -= sizes.remove(id);
+                    trimmed = null;
+                } else {
+                    schedules.put(id, trimmed);
+                    long size = trimmed.getMemoryEstimate();
+                    bytes += size - sizes.put(id, size);
+                }
+                events.add(new Event(id, original, trimmed, ScheduleDiff.compute(original, trimmed)));
+            }
+            deliver();
+        }
+    }
+
+    /**
+     * @return ids of all cached channels
+     */
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(schedules.keySet());
+    }
+
+    /**
+     * @return read-only live view of the cached schedules
+     */
+    public Map<String, Schedule> asMap() {
+        return Collections.unmodifiableMap(schedules);
+    }
+
+    /**
+     * @return number of times an already cached channel was refreshed without any change
+     */
+    public long getUnchangedRefreshes() {
+        return unchangedRefreshes.get();
+    }
+
+    /**
+     * @return number of times an already cached channel was refreshed with at least one change
+     */
+    public long getChangedRefreshes() {
+        return changedRefreshes.get();
+    }
+
+    /**
+     * @return number of lookups that found the channel cached
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups that did not find the channel cached
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return share of lookups that found the channel cached, between 0 and 1, or 0 before the first lookup
+     */
+    public double getHitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return number of channels evicted to make room for others
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of new channels that were not cached because the channels they would replace are used more
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * @return estimated memory used by the cached schedules, in bytes
+     */
+    public long getByteSize() {
+        synchronized (sizes) {
+            return bytes;
+        }
+    }
+
+    /**
+     * @return the most memory the cached schedules may use, in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Tell the listeners about every change made so far, in order. Returns once they have been told, unless it is
+     * called from a listener, in which case the delivery that is already running goes on with the new changes.
+     */
+    private void deliver() {
+        if (delivery.isHeldByCurrentThread())
+            return;
+        delivery.lock();
+        try {
+            while (true) {
+                Event event;
+                synchronized (sizes) {
+                    event = events.poll();
+                }
+                if (event == null)
+                    return;
+                for (Listener listener : listeners)
+                    listener.scheduleReplaced(event.id, event.previous, event.current, event.diff);
+            }
+        } finally {
+            delivery.unlock();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ScheduleDiff is the difference between two versions of a channel's schedule. Programmes are matched on their start
+ * time and title; a matched programme whose content hash differs is reported as changed. Programmes with the same
+ * start time and title in one schedule are matched in the order they appear in.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ScheduleDiff {
+    public static final ScheduleDiff NONE = new ScheduleDiff(List.of(), List.of(), List.of());
+
+    public final List<Programme> added;
+    public final List<Programme> removed;
+    public final List<Change> changed;
+
+    /**
+     * A programme that is in both versions but whose content has changed
+     * @param before the programme in the previous schedule
+     * @param after the programme in the new schedule
+     */
+    public record Change(Programme before, Programme after) { }
+
+    /**
+     * Programmes are matched on start time and title
+     * @param start start time in epoch seconds
+     * @param name programme title
+     * @param occurrence how many programmes before this one in the same schedule have the same start time and title
+     */
+    private record Key(long start, String name, int occurrence) {
+        /**
+         * @param schedule schedule, ordered by start time
+         * @param index index of a programme in the schedule
+         * @return key of the programme
+         */
+        static Key of(Schedule schedule, int index) {
+            long start = schedule.start(index);
+            String name = schedule.name(index);
+            int occurrence = 0;
+            for (int i = index - 1; i >= 0 && schedule.start(i) == start; i--) {
+                if (Objects.equals(schedule.name(i), name))
+                    occurrence++;
+            }
+            return new Key(start, name, occurrence);
+        }
+    }
+
+    private ScheduleDiff(List<Programme> added, List<Programme> removed, List<Change> changed) {
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * Compute the difference between two schedules
+     * @param previous the cached schedule, or null if there was none
+     * @param next the new schedule, or null if the channel was removed
+     * @return ScheduleDiff
+     */
+    public static ScheduleDiff compute(Schedule previous, Schedule next) {
+        if (previous == next)
+            return NONE;
+        if (previous == null)
+            return new ScheduleDiff(List.copyOf(next), List.of(), List.of());
+        if (next == null)
+            return new ScheduleDiff(List.of(), List.copyOf(previous), List.of());
+
+        HashMap<Key, Programme> before = new HashMap<>();
+        for (int i = 0; i < previous.size(); i++)
+            before.put(Key.of(previous, i), previous.get(i));
+
+        List<Programme> added = new ArrayList<>();
+        List<Change> changed = new ArrayList<>();
+        for (int i = 0; i < next.size(); i++) {
+            Programme p = next.get(i);
+            Programme old = before.remove(Key.of(next, i));
+            if (old == null)
+                added.add(p);
+            else if (old.hashCode() != p.hashCode() || !old.equals(p))
+                changed.add(new Change(old, p));
+        }
+        List<Programme> removed = new ArrayList<>(before.values());
+
+        if (added.isEmpty() && removed.isEmpty() && changed.isEmpty())
+            return NONE;
+        return new ScheduleDiff(added, removed, changed);
+    }
+
+    /**
+     * @return true if nothing was added, removed or changed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added.size() + " -" + removed.size() + " ~" + changed.size();
+    }
+}
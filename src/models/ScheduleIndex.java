@@ -0,0 +1,156 @@
+package models;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ScheduleIndex answers "what is on" questions across every cached channel without going to the API. Every channel
+ * keeps its start times and a running maximum of its end times so a single channel is searched with binary search,
+ * and a global index of one-hour buckets tells which channels have anything at all around a given time. The index
+ * listens to the ScheduleCache and is updated one channel at a time whenever a schedule is replaced.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ScheduleIndex implements ScheduleCache.Listener {
+    private static final long BUCKET_SECONDS = 3600;
+
+    private final ConcurrentHashMap<String, ChannelEntry> channels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Set<String>> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * A programme airing on a channel
+     * @param channelId channel id
+     * @param programme the programme
+     */
+    public record Airing(String channelId, Programme programme) { }
+
+    /**
+     * The indexed schedule of one channel
+     * @param schedule the schedule, ordered by start time
+     * @param maxEnds maxEnds[i] is the latest end time among programmes 0..i, which is non-decreasing
+     * @param bucketIds buckets the channel was added to
+     */
+    private record ChannelEntry(Schedule schedule, long[] maxEnds, long[] bucketIds) { }
+
+    /**
+     * Index every schedule already in the cache and keep following its changes
+     * @param cache the schedule cache
+     */
+    public ScheduleIndex(ScheduleCache cache) {
+        cache.addListener(this);
+        cache.asMap().forEach((id, schedule) -> scheduleReplaced(id, null, schedule, ScheduleDiff.compute(null, schedule)));
+    }
+
+    /**
+     * Index the new schedule of a channel. The new entry is published with a single write, so that a query running at
+     * the same time sees either the old or the new schedule of the channel, never neither. The channel is added to its
+     * new buckets before that and removed from the buckets it has left only afterwards.
+     */
+    @Override
+    public synchronized void scheduleReplaced(String id, Schedule previous, Schedule current, ScheduleDiff diff) {
+        ChannelEntry old;
+        long[] ids = new long[0];
+        if (current == null || current.isEmpty()) {
+            old = channels.remove(id);
+        } else {
+            long[] maxEnds = new long[current.size()];
+            HashSet<Long> bucketIds = new HashSet<>();
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < current.size(); i++) {
+                maxEnd = Math.max(maxEnd, current.end(i));
+                maxEnds[i] = maxEnd;
+                for (long b = bucket(current.start(i)); b <= bucket(Math.max(current.start(i), current.end(i) - 1)); b++)
+                    bucketIds.add(b);
+            }
+            ids = bucketIds.stream().mapToLong(Long::longValue).sorted().toArray();
+            for (long bucket : ids)
+                buckets.computeIfAbsent(bucket, b -> ConcurrentHashMap.newKeySet()).add(id);
+            old = channels.put(id, new ChannelEntry(current, maxEnds, ids));
+        }
+        if (old == null)
+            return;
+        for (long bucket : old.bucketIds) {
+            if (Arrays.binarySearch(ids, bucket) >= 0)
+                continue;
+            Set<String> members = buckets.get(bucket);
+            if (members != null) {
+                members.remove(id);
+                if (members.isEmpty())
+                    buckets.remove(bucket);
+            }
+        }
+    }
+
+    /**
+     * @return the programmes airing right now on every cached channel
+     */
+    public List<Airing> nowPlaying() {
+        return at(Instant.now().getEpochSecond());
+    }
+
+    /**
+     * @param time time in epoch seconds
+     * @return the programmes airing at the given time on every cached channel
+     */
+    public List<Airing> at(long time) {
+        return between(time, time + 1);
+    }
+
+    /**
+     * @param from start of the range in epoch seconds, inclusive
+     * @param to end of the range in epoch seconds, exclusive
+     * @return every programme on any cached channel that airs during part of the range, grouped by channel and
+     * ordered by start time within each channel
+     */
+    public List<Airing> between(long from, long to) {
+        List<Airing> result = new ArrayList<>();
+        if (to <= from)
+            return result;
+        HashSet<String> candidates = new HashSet<>();
+        for (long b = bucket(from); b <= bucket(to - 1); b++) {
+            Set<String> ids = buckets.get(b);
+            if (ids != null)
+                candidates.addAll(ids);
+        }
+        for (String id : candidates) {
+            ChannelEntry entry = channels.get(id);
+            if (entry == null)
+                continue;
+            Schedule schedule = entry.schedule;
+            for (int i = firstEndingAfter(entry.maxEnds, from); i < schedule.size() && schedule.start(i) < to; i++) {
+                if (schedule.end(i) > from)
+                    result.add(new Airing(id, schedule.get(i)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Binary search for the first programme whose running maximum end time is after the given time. No programme
+     * before it can end after the time.
+     * @param maxEnds running maximum of end times
+     * @param time time in epoch seconds
+     * @return index of the first candidate programme
+     */
+    private static int firstEndingAfter(long[] maxEnds, long time) {
+        int lo = 0, hi = maxEnds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] > time)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    private static long bucket(long time) {
+        return Math.floorDiv(time, BUCKET_SECONDS);
+    }
+}
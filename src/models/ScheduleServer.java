@@ -0,0 +1,385 @@
+package models;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ScheduleServer is the headless adapter on top of a ScheduleService: it serves the channel list, the schedules and
+ * what is on right now as JSON over a small local HTTP server, so that many clients share one schedule cache.
+ * <ul>
+ *     <li>GET /api/channels</li>
+ *     <li>GET /api/schedules/{channel id}, the whole cached schedule, fetched first if it is not cached</li>
+ *     <li>GET /api/now</li>
+ *     <li>GET /api/search?q={words}&amp;limit={most hits, default 50}</li>
+ * </ul>
+ * Every response is rendered once per version of the data it comes from, a schedule only when the cached Schedule
+ * instance changes and what is on at most once a second, and is kept both plain and gzipped. Responses carry an ETag
+ * and a request whose If-None-Match matches is answered with 304, so a busy client mostly costs a map lookup.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ScheduleServer implements AutoCloseable {
+    private static final String SCHEDULES = "/api/schedules/";
+    private static final Histogram REQUEST_TIME = Metrics.timer("server.request");
+    private static final Metrics.Counter NOT_MODIFIED = Metrics.counter("server.notModified");
+
+    static {
+        // Without TCP_NODELAY the headers and the body go out in separate small packets and every keep-alive request
+        // waits about 40 ms for a delayed ACK. Only read when the JDK server is first used.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ScheduleService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, Rendered> schedules = new ConcurrentHashMap<>();
+    private volatile Rendered channels;
+    private volatile Rendered now;
+
+    /**
+     * A response rendered from one version of the data
+     * @param source the data it was rendered from, compared by identity
+     * @param second the second it was rendered in, for responses that change with time
+     * @param eTag ETag of the body, without quotes
+     * @param body JSON body
+     * @param gzipped gzipped JSON body
+     */
+    private record Rendered(Object source, long second, String eTag, byte[] body, byte[] gzipped) { }
+
+    /**
+     * Start serving a schedule service
+     * @param service the service whose data is served
+     * @param address address to listen on
+     * @param threads number of threads answering requests
+     * @throws IOException if the address cannot be bound
+     */
+    public ScheduleServer(ScheduleService service, InetSocketAddress address, int threads) throws IOException {
+        this.service = service;
+        // evicted channels must not stay reachable through their rendered responses
+        service.getCache().addListener((id, previous, current, diff) -> {
+            if (current == null)
+                schedules.remove(id);
+        });
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "schedule-server-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.server = HttpServer.create(address, 1024);
+        server.createContext("/api/channels", exchange -> handle(exchange, this::channels));
+        server.createContext(SCHEDULES, exchange -> handle(exchange, this::schedule));
+        server.createContext("/api/now", exchange -> handle(exchange, this::now));
+        server.createContext("/api/search", exchange -> handle(exchange, this::search));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Renders the response to a request, or answers it with an error status and returns null
+     */
+    private interface Resource {
+        Rendered render(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Resource resource) throws IOException {
+        long start = Metrics.start();
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Rendered rendered = resource.render(exchange);
+            if (rendered != null)
+                send(exchange, rendered, method.equals("HEAD"));
+        } finally {
+            REQUEST_TIME.recordSince(start);
+        }
+    }
+
+    private Rendered channels(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/api/channels")) {
+            exchange.sendResponseHeaders(404, -1);
+            return null;
+        }
+        List<Channel> chs = service.getChannels();
+        if (chs == null) {
+            unavailable(exchange);
+            return null;
+        }
+        Rendered rendered = channels;
+        if (rendered == null || rendered.source != chs)
+            channels = rendered = render(chs, 0, () -> channelsJson(chs));
+        return rendered;
+    }
+
+    private Rendered schedule(HttpExchange exchange) throws IOException {
+        String id = exchange.getRequestURI().getPath().substring(SCHEDULES.length());
+        if (!service.hasChannel(id)) {
+            exchange.sendResponseHeaders(404, -1);
+            return null;
+        }
+        Schedule schedule = service.getFullSchedule(id);
+        if (schedule == null) {
+            unavailable(exchange);
+            return null;
+        }
+        Rendered rendered = schedules.get(id);
+        if (rendered == null || rendered.source != schedule) {
+            rendered = render(schedule, 0, () -> scheduleJson(id, schedule));
+            // a schedule the cache did not admit is served but not kept
+            if (service.getCache().get(id) == schedule)
+                schedules.put(id, rendered);
+            else
+                schedules.remove(id);
+        }
+        return rendered;
+    }
+
+    private Rendered now(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/api/now")) {
+            exchange.sendResponseHeaders(404, -1);
+            return null;
+        }
+        long second = Instant.now().getEpochSecond();
+        Rendered rendered = now;
+        if (rendered == null || rendered.second != second)
+            now = rendered = render(null, second, () -> nowJson(service.getScheduleIndex().at(second)));
+        return rendered;
+    }
+
+    private Rendered search(HttpExchange exchange) throws IOException {
+        String q = null;
+        int limit = 50;
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                int eq = param.indexOf('=');
+                String key = eq < 0 ? param : param.substring(0, eq);
+                String value = eq < 0 ? "" : URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8);
+                if (key.equals("q"))
+                    q = value;
+                else if (key.equals("limit"))
+                    limit = parseLimit(value);
+            }
+        }
+        if (q == null || limit <= 0) {
+            exchange.sendResponseHeaders(400, -1);
+            return null;
+        }
+        List<SearchIndex.Hit> hits = service.search(q, Math.min(limit, 500));
+        // search results are not cached, they are cheap to compute and rarely asked for twice
+        return render(null, 0, () -> searchJson(hits));
+    }
+
+    private static int parseLimit(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void unavailable(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "30");
+        exchange.sendResponseHeaders(503, -1);
+    }
+
+    private static void send(HttpExchange exchange, Rendered rendered, boolean head) throws IOException {
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean useGzip = accept != null && accept.contains("gzip");
+        // the encodings are different representations and get different tags, either one validates
+        exchange.getResponseHeaders().set("ETag", "\"" + rendered.eTag + (useGzip ? "-gz\"" : "\""));
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), rendered.eTag)) {
+            NOT_MODIFIED.increment();
+            noBody(exchange, 304);
+            return;
+        }
+        byte[] out = useGzip ? rendered.gzipped : rendered.body;
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (useGzip)
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        if (head) {
+            noBody(exchange, 200);
+            return;
+        }
+        exchange.sendResponseHeaders(200, out.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+    /**
+     * Check an If-None-Match header against the current body. The header is a list of entity tags separated by commas,
+     * or *. A tag matches if it is the tag of either encoding of the body; weak tags are compared like strong ones,
+     * as If-None-Match asks for.
+     * @param header value of the If-None-Match header, or null if there is none
+     * @param eTag ETag of the body, without quotes
+     * @return true if the client already has the body
+     */
+    static boolean matches(String header, String eTag) {
+        if (header == null)
+            return false;
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals("\"" + eTag + "\"") || tag.equals("\"" + eTag + "-gz\""))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Answer without a body. The JDK server only keeps the connection alive after such a response if the request body
+     * has been read to the end, so it is closed first.
+     */
+    private static void noBody(HttpExchange exchange, int status) throws IOException {
+        exchange.getRequestBody().close();
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static Rendered render(Object source, long second, Supplier<String> json) {
+        byte[] body = json.get().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        String eTag = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length);
+        return new Rendered(source, second, eTag, body, gzip(body));
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String channelsJson(List<Channel> chs) {
+        StringBuilder json = new StringBuilder(chs.size() * 40).append('[');
+        for (int i = 0; i < chs.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            json.append("{\"id\":");
+            string(json, chs.get(i).id);
+            json.append(",\"name\":");
+            string(json, chs.get(i).name);
+            json.append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String scheduleJson(String id, Schedule schedule) {
+        StringBuilder json = new StringBuilder(schedule.size() * 200).append("{\"channel\":");
+        string(json, id);
+        json.append(",\"programmes\":[");
+        for (int i = 0; i < schedule.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            programme(json, schedule.get(i));
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String nowJson(List<ScheduleIndex.Airing> airings) {
+        StringBuilder json = new StringBuilder(airings.size() * 200).append('[');
+        for (int i = 0; i < airings.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            programme(json, airings.get(i).programme());
+            json.append(",\"channel\":");
+            string(json, airings.get(i).channelId());
+            json.append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String searchJson(List<SearchIndex.Hit> hits) {
+        StringBuilder json = new StringBuilder(hits.size() * 200).append('[');
+        for (int i = 0; i < hits.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            programme(json, hits.get(i).programme());
+            json.append(",\"channel\":");
+            string(json, hits.get(i).channelId());
+            json.append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Append a programme as a JSON object, without the closing brace so that the caller can add fields
+     */
+    private static void programme(StringBuilder json, Programme p) {
+        json.append("{\"name\":");
+        string(json, p.name());
+        json.append(",\"start\":").append(p.start());
+        json.append(",\"end\":").append(p.end());
+        json.append(",\"image\":");
+        string(json, p.imagePath());
+        json.append(",\"description\":");
+        string(json, p.description());
+    }
+
+    /**
+     * Append a string as a quoted and escaped JSON string
+     */
+    private static void string(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        json.append(String.format("\\u%04x", (int) c));
+                    else
+                        json.append(c);
+                }
+            }
+        }
+        json.append('"');
+    }
+}
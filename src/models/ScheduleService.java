@@ -0,0 +1,256 @@
+package models;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * ScheduleService is the core of RadioInfo without any user interface: the channel list, the schedule cache with its
+ * indexes and the scheduler that keeps the cache up to date. The Swing GUI and the headless ScheduleServer are both
+ * adapters on top of it, and nothing in here depends on Swing.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ScheduleService {
+    private final ScheduleCache programMap = new ScheduleCache();
+    private final ScheduleIndex scheduleIndex = new ScheduleIndex(programMap);
+    private final SearchIndex searchIndex = new SearchIndex(programMap);
+    private final RefreshScheduler scheduler;
+    private final UpdaterModel updater = new UpdaterModel();
+    private volatile ArrayList<Channel> channels;
+
+    /**
+     * Create a service that refreshes at most radioinfo.refreshParallelism (default 4) channels at the same time
+     */
+    public ScheduleService() {
+        this(Integer.getInteger("radioinfo.refreshParallelism", 4));
+    }
+
+    /**
+     * @param refreshParallelism the most channels refreshed at the same time
+     */
+    public ScheduleService(int refreshParallelism) {
+        this.scheduler = new RefreshScheduler(programMap, refreshParallelism);
+    }
+
+    /**
+     * Fill the channel list and the cache from a snapshot of an earlier run
+     * @param file snapshot file
+     * @return true if the snapshot held any channels
+     */
+    public boolean loadSnapshot(Path file) {
+        ScheduleSnapshot snapshot = ScheduleSnapshot.load(file);
+        if (snapshot == null || snapshot.channels.isEmpty())
+            return false;
+        channels = snapshot.channels;
+        programMap.putAll(snapshot.schedules, snapshot.savedAt);
+        evictEnded();
+        return true;
+    }
+
+    /**
+     * Write the channels and the cached schedules to a snapshot file. Nothing is written before the channels are known.
+     * @param file snapshot file
+     * @throws IOException if the file could not be written
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        ArrayList<Channel> chs = channels;
+        if (chs != null)
+            ScheduleSnapshot.save(file, chs, programMap.asMap());
+    }
+
+    /**
+     * Start keeping the cache up to date. The RefreshScheduler refreshes every channel on its own timetable, and every
+     * five minutes the programmes that have ended are evicted.
+     */
+    public void start() {
+        scheduler.start();
+        scheduler.every(Duration.ofMinutes(5), this::evictEnded);
+    }
+
+    /**
+     * Expose the state of the schedule cache and the search index as gauges
+     */
+    public void registerMetrics() {
+        Metrics.gauge("cache.channels", () -> programMap.keySet().size());
+        Metrics.gauge("cache.refreshes.changed", programMap::getChangedRefreshes);
+        Metrics.gauge("cache.refreshes.unchanged", programMap::getUnchangedRefreshes);
+        Metrics.gauge("cache.bytes", programMap::getByteSize);
+        Metrics.gauge("cache.maxBytes", programMap::getMaxBytes);
+        Metrics.gauge("cache.hitRatePercent", () -> Math.round(programMap.getHitRate() * 100));
+        Metrics.gauge("cache.evictions", programMap::getEvictions);
+        Metrics.gauge("cache.rejections", programMap::getRejections);
+        Metrics.gauge("search.index.bytes", searchIndex::getMemoryEstimate);
+        Metrics.gauge("search.index.terms", searchIndex::getTermCount);
+        Metrics.gauge("search.index.programmes", searchIndex::getDocumentCount);
+    }
+
+    /**
+     * Drop the programmes that are too old to ever be shown again from the cache
+     */
+    public void evictEnded() {
+        programMap.evictEndedBefore(Instant.now().getEpochSecond() - UpdaterModel.HOURS_BEFORE * 3600);
+    }
+
+    /**
+     * @return the channels, or null if they have not been fetched or loaded yet
+     */
+    public List<Channel> getChannels() {
+        return channels;
+    }
+
+    /**
+     * Fetch the channel list from the API, handing every channel to a consumer as soon as it has been parsed
+     * @param onChannel Called with every channel, in order
+     * @return all channels, or null if the fetch failed
+     */
+    public List<Channel> fetchChannels(Consumer<Channel> onChannel) {
+        ArrayList<Channel> fetched = new RadioParser().fetchChannels(onChannel);
+        if (fetched != null)
+            channels = fetched;
+        return fetched;
+    }
+
+    /**
+     * Fetch the channel list from the API again and keep it if it differs from the current one
+     * @return the new channels, or null if they did not change or could not be fetched
+     */
+    public List<Channel> refreshChannels() {
+        ArrayList<Channel> fresh = new RadioParser().fetchChannels();
+        if (fresh == null || sameChannels(channels, fresh))
+            return null;
+        channels = fresh;
+        return fresh;
+    }
+
+    /**
+     * @param id channel id
+     * @return true if the channel is in the channel list
+     */
+    public boolean hasChannel(String id) {
+        List<Channel> chs = channels;
+        if (chs == null)
+            return false;
+        for (Channel ch : chs) {
+            if (ch.id.equals(id))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The programmes of a channel that end at most 6 hours ago and start at most 12 hours from now. A cached channel
+     * is answered from the cache and revalidated in the background if it is stale, an uncached channel is fetched.
+     * @param id channel id
+     * @return the programmes, or null if the channel could not be fetched
+     */
+    public List<Programme> getSchedule(String id) {
+        return updater.getChannel(programMap, id);
+    }
+
+    /**
+     * Like getSchedule, but only from the cache: the channel is neither fetched nor revalidated, and the call does not
+     * count as a use of the channel for the cache's eviction policy or hit rate.
+     * @param id channel id
+     * @return the programmes, or null if the channel is not cached
+     */
+    public List<Programme> peekSchedule(String id) {
+        return updater.peekChannel(programMap, id);
+    }
+
+    /**
+     * Like getSchedule, but always fetches the channel from the API. The cached programmes are returned if the fetch
+     * fails.
+     * @param id channel id
+     * @return the programmes, or null if the channel is neither fetched nor cached
+     */
+    public List<Programme> refreshSchedule(String id) {
+        return updater.updateChannel(programMap, id);
+    }
+
+    /**
+     * The whole cached schedule of a channel, fetching it first if it is not cached. Stale schedules are revalidated
+     * in the background.
+     * @param id channel id
+     * @return the schedule, or null if the channel could not be fetched
+     */
+    public Schedule getFullSchedule(String id) {
+        return updater.getSchedule(programMap, id);
+    }
+
+    /**
+     * @return the programmes airing right now on every cached channel
+     */
+    public List<ScheduleIndex.Airing> nowPlaying() {
+        return scheduleIndex.nowPlaying();
+    }
+
+    /**
+     * Search the title and description of every cached programme
+     * @param query words to search for, the last one may be incomplete
+     * @param limit the most hits to return
+     * @return the matching programmes, ordered by start time
+     */
+    public List<SearchIndex.Hit> search(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * Tell the scheduler that the user looked at a channel, which is then kept fresher
+     * @param id channel id
+     */
+    public void viewed(String id) {
+        scheduler.viewed(id);
+    }
+
+    /**
+     * Run a task periodically on the scheduler's threads
+     * @param period time between runs
+     * @param task task to run
+     */
+    public void every(Duration period, Runnable task) {
+        scheduler.every(period, task);
+    }
+
+    /**
+     * @return the schedule cache
+     */
+    public ScheduleCache getCache() {
+        return programMap;
+    }
+
+    /**
+     * @return index for querying what is on across all cached channels
+     */
+    public ScheduleIndex getScheduleIndex() {
+        return scheduleIndex;
+    }
+
+    /**
+     * @return full-text index over all cached programmes
+     */
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Compare two channel lists by id and name
+     * @param a channel list, may be null
+     * @param b channel list
+     * @return true if both lists contain the same channels in the same order
+     */
+    private static boolean sameChannels(List<Channel> a, List<Channel> b) {
+        if (a == null || a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).id.equals(b.get(i).id) || !a.get(i).name.equals(b.get(i).name))
+                return false;
+        }
+        return true;
+    }
+}
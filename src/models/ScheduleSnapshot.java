@@ -0,0 +1,172 @@
+package models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * ScheduleSnapshot is a compact binary copy of the channel list and the cached schedules that is kept on disk between
+ * runs, so that the program can show something immediately on startup and revalidate against the API afterwards.
+ * The file starts with a magic number, a format version, the payload length and a CRC32 of the payload. A file that
+ * is missing, of another version, truncated or corrupt is simply ignored.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ScheduleSnapshot {
+    public static final Path DEFAULT_FILE = Path.of(System.getProperty("user.home"), ".radioinfo", "snapshot.bin");
+
+    private static final int MAGIC = 0x53524931;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+
+    public final long savedAt;
+    public final ArrayList<Channel> channels;
+    public final Map<String, Schedule> schedules;
+
+    private ScheduleSnapshot(long savedAt, ArrayList<Channel> channels, Map<String, Schedule> schedules) {
+        this.savedAt = savedAt;
+        this.channels = channels;
+        this.schedules = schedules;
+    }
+
+    /**
+     * Write a snapshot. The file is written through a temporary file and moved into place, so a crash never leaves a
+     * half-written snapshot behind.
+     * @param file file to write to
+     * @param channels all channels
+     * @param schedules cached schedules per channel id
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void save(Path file, List<Channel> channels, Map<String, Schedule> schedules)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(channels.size());
+        for (Channel ch : channels) {
+            writeString(out, ch.id);
+            writeString(out, ch.name);
+        }
+        Map<String, Schedule> copy = new HashMap<>(schedules);
+        out.writeInt(copy.size());
+        for (Map.Entry<String, Schedule> entry : copy.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Programme p : entry.getValue()) {
+                writeString(out, p.name());
+                out.writeLong(p.start());
+                out.writeLong(p.end());
+                writeString(out, p.imagePath());
+                writeString(out, p.description());
+            }
+        }
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(payload.length)
+                .putLong(crc.getValue())
+                .flip();
+
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), "snapshot", ".tmp");
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            fc.write(new ByteBuffer[]{header, ByteBuffer.wrap(payload)});
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a snapshot by memory-mapping the file
+     * @param file file to read from
+     * @return the snapshot, or null if the file is missing, of another version or corrupt
+     */
+    public static ScheduleSnapshot load(Path file) {
+        if (!Files.isReadable(file))
+            return null;
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (fc.size() < HEADER_BYTES)
+                return null;
+            MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+                return null;
+            int length = buf.getInt();
+            long checksum = buf.getLong();
+            if (length < 0 || length != buf.remaining())
+                return null;
+
+            ByteBuffer payload = buf.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != checksum)
+                return null;
+
+            long savedAt = payload.getLong();
+            int channelCount = payload.getInt();
+            ArrayList<Channel> channels = new ArrayList<>(channelCount);
+            for (int i = 0; i < channelCount; i++)
+                channels.add(new Channel(readString(payload), readString(payload)));
+
+            int scheduleCount = payload.getInt();
+            Map<String, Schedule> schedules = new HashMap<>();
+            for (int i = 0; i < scheduleCount; i++) {
+                String id = readString(payload);
+                int programmeCount = payload.getInt();
+                Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+                for (int j = 0; j < programmeCount; j++) {
+                    builder.addProgramme(readString(payload), payload.getLong(), payload.getLong(),
+                            readString(payload), readString(payload));
+                }
+                schedules.put(id, builder.buildSchedule());
+            }
+            return new ScheduleSnapshot(savedAt, channels, schedules);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write a string as its UTF-8 length followed by its UTF-8 bytes
+     * @param out stream to write to
+     * @param s string to write
+     * @throws IOException if writing fails
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /**
+     * Read a string written by writeString
+     * @param buf buffer to read from
+     * @return the string
+     */
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining())
+            throw new IllegalArgumentException("Corrupt string length " + length);
+        byte[] b = new byte[length];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,351 @@
+package models;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * SearchIndex is an inverted index over the title and description of every cached programme, for searching all
+ * channels at once. Text is folded before it is split into words, so that case and diacritics do not matter: "Ö" and
+ * "o", "å", "ä" and "a", "é" and "e" all match each other. The last word of a query matches every word it is a prefix
+ * of, which makes the index usable for search-as-you-type; the other words must match whole words.
+ * <p>
+ * The index listens to the ScheduleCache and is updated from the ScheduleDiff of every replaced schedule, so only the
+ * added, removed and changed programmes are indexed again. Programmes are identified by channel, start time and title,
+ * the same way ScheduleDiff matches them, and resolved to the cached programme when a query is answered, which keeps
+ * the index from holding on to replaced schedules.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class SearchIndex implements ScheduleCache.Listener {
+    private static final Histogram QUERY_TIME = Metrics.timer("search.query");
+    private static final Postings NO_DOCS = new Postings();
+    /** Programme ids are below 2^24, so a start time and an id fit in one long */
+    private static final int ID_BITS = 24;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final HashMap<Doc, Integer> docIds = new HashMap<>();
+    private final HashMap<String, Schedule> schedules = new HashMap<>();
+    private Doc[] docs = new Doc[1024];
+    private int[] freeIds = new int[64];
+    private int freeCount;
+    private int nextId;
+
+    /**
+     * A search hit
+     * @param channelId channel id
+     * @param programme the cached programme
+     */
+    public record Hit(String channelId, Programme programme) { }
+
+    /**
+     * An indexed programme
+     * @param channelId channel id
+     * @param start start time in epoch seconds
+     * @param name programme title
+     * @param terms the words the programme is indexed under
+     */
+    private record Doc(String channelId, long start, String name, String[] terms) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Doc d && start == d.start && channelId.equals(d.channelId) && name.equals(d.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return (channelId.hashCode() * 31 + Long.hashCode(start)) * 31 + name.hashCode();
+        }
+    }
+
+    /**
+     * The ids of the programmes indexed under a word, sorted. New programmes mostly get the highest id so far and are
+     * appended at the end.
+     */
+    private static final class Postings {
+        int[] ids;
+        int size;
+
+        Postings() {
+            this(new int[0], 0);
+        }
+
+        Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) {
+                int at = Arrays.binarySearch(ids, 0, size, id);
+                if (at >= 0)
+                    return;
+                at = -at - 1;
+                grow();
+                System.arraycopy(ids, at, ids, at + 1, size - at);
+                ids[at] = id;
+            } else {
+                grow();
+                ids[size] = id;
+            }
+            size++;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0)
+                return;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            if (size < ids.length / 4 && ids.length > 4)
+                ids = Arrays.copyOf(ids, ids.length / 2);
+        }
+
+        private void grow() {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, Math.max(2, size * 2));
+        }
+
+        Postings intersect(Postings other) {
+            int[] both = new int[Math.min(size, other.size)];
+            int n = 0;
+            for (int i = 0, j = 0; i < size && j < other.size; ) {
+                if (ids[i] < other.ids[j])
+                    i++;
+                else if (ids[i] > other.ids[j])
+                    j++;
+                else {
+                    both[n++] = ids[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new Postings(both, n);
+        }
+    }
+
+    /**
+     * Index every schedule already in the cache and keep following its changes
+     * @param cache the schedule cache
+     */
+    public SearchIndex(ScheduleCache cache) {
+        cache.addListener(this);
+        cache.asMap().forEach((id, schedule) -> scheduleReplaced(id, null, schedule, ScheduleDiff.compute(null, schedule)));
+    }
+
+    @Override
+    public void scheduleReplaced(String id, Schedule previous, Schedule current, ScheduleDiff diff) {
+        lock.writeLock().lock();
+        try {
+            if (current == null)
+                schedules.remove(id);
+            else
+                schedules.put(id, current);
+            for (Programme p : diff.removed)
+                remove(id, p);
+            for (ScheduleDiff.Change change : diff.changed) {
+                remove(id, change.before());
+                add(id, change.after());
+            }
+            for (Programme p : diff.added)
+                add(id, p);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Search the title and description of every cached programme
+     * @param query words to search for, the last one may be incomplete
+     * @param limit the most hits to return
+     * @return the programmes matching every word, ordered by start time
+     */
+    public List<Hit> search(String query, int limit) {
+        long start = Metrics.start();
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0)
+            return List.of();
+        boolean lastIsPrefix = !query.isEmpty() && Character.isLetterOrDigit(query.charAt(query.length() - 1));
+
+        ArrayList<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Postings matches = null;
+            for (int i = 0; i < words.size() && (matches == null || matches.size > 0); i++) {
+                boolean prefix = lastIsPrefix && i == words.size() - 1;
+                Postings withWord = prefix ? withPrefix(words.get(i)) : terms.getOrDefault(words.get(i), NO_DOCS);
+                matches = matches == null ? withWord : matches.intersect(withWord);
+            }
+            // keep the earliest programmes in a max-heap of start time and id, so that only they are resolved
+            PriorityQueue<Long> earliest = new PriorityQueue<>(limit, Comparator.reverseOrder());
+            for (int i = 0; i < matches.size; i++) {
+                int id = matches.ids[i];
+                long key = docs[id].start << ID_BITS | id;
+                if (earliest.size() < limit) {
+                    earliest.add(key);
+                } else if (key < earliest.peek()) {
+                    earliest.poll();
+                    earliest.add(key);
+                }
+            }
+            long[] keys = earliest.stream().mapToLong(Long::longValue).sorted().toArray();
+            for (long key : keys) {
+                Hit hit = resolve(docs[(int) (key & ((1 << ID_BITS) - 1))]);
+                if (hit != null)
+                    hits.add(hit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        QUERY_TIME.recordSince(start);
+        return hits;
+    }
+
+    /**
+     * @return number of indexed programmes
+     */
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return docIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of distinct words
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimate the memory used by the index, assuming a 64-bit JVM with compressed references. The programme titles
+     * are shared with the schedules through the StringPool and are not counted.
+     * @return estimated size in bytes
+     */
+    public long getMemoryEstimate() {
+        lock.readLock().lock();
+        try {
+            long bytes = 16L + docs.length * 4L + freeIds.length * 4L;
+            for (Map.Entry<String, Postings> term : terms.entrySet()) {
+                // TreeMap entry, the word, the postings and their array
+                bytes += 40 + 24 + 16 + term.getKey().length() + 16 + 16 + term.getValue().ids.length * 4L;
+            }
+            for (Doc doc : docIds.keySet()) {
+                // HashMap node and boxed id, the Doc and its array of word references
+                bytes += 32 + 16 + 32 + 16 + doc.terms.length * 4L;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fold and split text into words: lower case, diacritics removed and split on everything that is not a letter or
+     * a digit
+     * @param text text to split
+     * @return the words, in order, with duplicates
+     */
+    static List<String> tokenize(String text) {
+        String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK)
+                continue;
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0)
+            words.add(word.toString());
+        return words;
+    }
+
+    private void add(String channelId, Programme p) {
+        String[] words = tokenize(p.name() + " " + p.description()).stream().distinct().map(StringPool::intern)
+                .toArray(String[]::new);
+        Doc doc = new Doc(channelId, p.start(), p.name(), words);
+        if (docIds.containsKey(doc))
+            return;
+        int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        if (id == docs.length)
+            docs = Arrays.copyOf(docs, docs.length * 2);
+        docs[id] = doc;
+        docIds.put(doc, id);
+        for (String word : words)
+            terms.computeIfAbsent(word, w -> new Postings()).add(id);
+    }
+
+    private void remove(String channelId, Programme p) {
+        Integer id = docIds.remove(new Doc(channelId, p.start(), p.name(), null));
+        if (id == null)
+            return;
+        for (String word : docs[id].terms) {
+            Postings withWord = terms.get(word);
+            withWord.remove(id);
+            if (withWord.size == 0)
+                terms.remove(word);
+        }
+        docs[id] = null;
+        if (freeCount == freeIds.length)
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Collect the programmes indexed under any word starting with the prefix
+     * @param prefix folded prefix
+     * @return ids of the programmes
+     */
+    private Postings withPrefix(String prefix) {
+        Map<String, Postings> matching = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (matching.size() == 1)
+            return matching.values().iterator().next();
+        BitSet union = new BitSet(nextId);
+        for (Postings withWord : matching.values()) {
+            for (int i = 0; i < withWord.size; i++)
+                union.set(withWord.ids[i]);
+        }
+        int[] ids = union.stream().toArray();
+        return new Postings(ids, ids.length);
+    }
+
+    /**
+     * Find the cached programme an indexed programme refers to
+     * @param doc indexed programme
+     * @return the hit, or null if the programme is no longer cached
+     */
+    private Hit resolve(Doc doc) {
+        Schedule schedule = schedules.get(doc.channelId);
+        if (schedule == null)
+            return null;
+        for (Programme p : schedule.between(doc.start, doc.start + 1)) {
+            if (p.start() == doc.start && p.name().equals(doc.name))
+                return new Hit(doc.channelId, p);
+        }
+        return null;
+    }
+}
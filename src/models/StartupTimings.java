@@ -0,0 +1,47 @@
+package models;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StartupTimings records how long after startup each phase of the startup pipeline finished, so that the time until
+ * the program is usable can be tracked. Phases may finish on different threads and in any order. Every finished phase
+ * is published as the gauge startup.&lt;phase&gt;, in milliseconds, so it shows in the diagnostics panel and over JMX.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class StartupTimings {
+    private static final System.Logger LOG = System.getLogger(StartupTimings.class.getName());
+
+    private final long start = System.nanoTime();
+    private final LinkedHashMap<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * Record that a phase has finished now. Only the first time a phase finishes is kept.
+     * @param phase name of the phase
+     */
+    public synchronized void mark(String phase) {
+        if (!phases.containsKey(phase)) {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            phases.put(phase, millis);
+            Metrics.gauge("startup." + phase, () -> millis);
+            LOG.log(System.Logger.Level.DEBUG, "Startup phase {0} finished after {1} ms", phase, millis);
+        }
+    }
+
+    /**
+     * @return the finished phases, in the order they finished, with milliseconds since startup
+     */
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    /**
+     * @return the finished phases formatted as "phase=ms" pairs
+     */
+    @Override
+    public synchronized String toString() {
+        return phases.toString();
+    }
+}
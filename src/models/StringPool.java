@@ -0,0 +1,38 @@
+package models;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * StringPool deduplicates the strings of all cached schedules, so that a title, description or image url that occurs
+ * in many programmes or channels is only kept in memory once. Strings that are no longer used by any schedule are
+ * released by the garbage collector.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public final class StringPool {
+    private static final WeakHashMap<String, WeakReference<String>> POOL = new WeakHashMap<>();
+
+    private StringPool() {
+    }
+
+    /**
+     * Return the pooled instance of a string, adding it to the pool if it is not there yet
+     * @param s string to deduplicate, may be null
+     * @return the pooled string that is equal to s, or null if s is null
+     */
+    public static String intern(String s) {
+        if (s == null)
+            return null;
+        synchronized (POOL) {
+            WeakReference<String> ref = POOL.get(s);
+            String pooled = ref == null ? null : ref.get();
+            if (pooled == null) {
+                POOL.put(s, new WeakReference<>(s));
+                pooled = s;
+            }
+            return pooled;
+        }
+    }
+}
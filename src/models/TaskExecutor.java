@@ -0,0 +1,181 @@
+package models;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * TaskExecutor runs the background work of RadioInfo in three priority classes, each with its own pool and
+ * concurrency limit, so that work of one class never queues behind work of another:
+ * <ul>
+ *     <li>INTERACTIVE: what a user is waiting for, e.g. the schedule of the channel they just selected. At most
+ *     radioinfo.executor.interactive (default 4) tasks at a time, on normal priority threads.</li>
+ *     <li>PREFETCH: speculative work for what the user is likely to do next. One task at a time, in order.</li>
+ *     <li>BACKGROUND: keeping the cache fresh. At most radioinfo.executor.background (default 2) tasks at a time.</li>
+ * </ul>
+ * Prefetch and background threads run at the lowest thread priority. Threads of other pools that do background work,
+ * like the RefreshScheduler, are created with threadFactory so that they belong to a class too; the ApiClient uses the
+ * class of the calling thread to keep some connections free for interactive requests. For every class the number of
+ * queued and running tasks are gauges and the time tasks wait in the queue is a timer.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public final class TaskExecutor {
+    private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<>();
+    private static final TaskExecutor SHARED = new TaskExecutor(Integer.getInteger("radioinfo.executor.interactive", 4),
+            1, Integer.getInteger("radioinfo.executor.background", 2));
+
+    private final EnumMap<Priority, ThreadPoolExecutor> pools = new EnumMap<>(Priority.class);
+    private final EnumMap<Priority, Histogram> waits = new EnumMap<>(Priority.class);
+
+    /**
+     * Priority classes, most urgent first
+     */
+    public enum Priority {
+        INTERACTIVE, PREFETCH, BACKGROUND;
+
+        String metricName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @param interactive the most interactive tasks running at the same time
+     * @param prefetch the most prefetch tasks running at the same time
+     * @param background the most background tasks running at the same time
+     */
+    private TaskExecutor(int interactive, int prefetch, int background) {
+        pools.put(Priority.INTERACTIVE, pool(Priority.INTERACTIVE, interactive));
+        pools.put(Priority.PREFETCH, pool(Priority.PREFETCH, prefetch));
+        pools.put(Priority.BACKGROUND, pool(Priority.BACKGROUND, background));
+        pools.forEach((priority, pool) -> {
+            String name = "executor." + priority.metricName();
+            waits.put(priority, Metrics.timer(name + ".wait"));
+            Metrics.gauge(name + ".queued", () -> pool.getQueue().size());
+            Metrics.gauge(name + ".active", pool::getActiveCount);
+        });
+    }
+
+    /**
+     * @return the executor shared by the whole program
+     */
+    public static TaskExecutor shared() {
+        return SHARED;
+    }
+
+    /**
+     * Run a task in a priority class
+     * @param priority priority class
+     * @param task task to run
+     */
+    public void execute(Priority priority, Runnable task) {
+        long queuedAt = Metrics.start();
+        Histogram wait = waits.get(priority);
+        pools.get(priority).execute(() -> {
+            wait.recordSince(queuedAt);
+            task.run();
+        });
+    }
+
+    /**
+     * Compute a value in a priority class
+     * @param priority priority class
+     * @param task task computing the value
+     * @param <T> type of the value
+     * @return future that completes with the value, or exceptionally if the task throws
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor(priority));
+    }
+
+    /**
+     * Compute a value in a priority class, like submit, but cancelling the returned future with cancel(true) also
+     * cancels the task: a task that has not started yet never runs, and a running task is interrupted, which abandons
+     * any request it is waiting for. The future completes with a CancellationException right away.
+     * @param priority priority class
+     * @param task task computing the value
+     * @param <T> type of the value
+     * @return future that completes with the value, exceptionally if the task throws, or is cancelled
+     */
+    public <T> CompletableFuture<T> submitInterruptible(Priority priority, Supplier<T> task) {
+        Interruptible<T> result = new Interruptible<>();
+        result.task = new FutureTask<>(() -> {
+            try {
+                result.complete(task.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return null;
+        });
+        execute(priority, result.task);
+        return result;
+    }
+
+    /**
+     * Future of a task that is interrupted when the future is cancelled
+     */
+    private static final class Interruptible<T> extends CompletableFuture<T> {
+        private volatile FutureTask<Void> task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled)
+                task.cancel(mayInterruptIfRunning);
+            return cancelled;
+        }
+    }
+
+    /**
+     * @param priority priority class
+     * @return an Executor that runs its tasks in the priority class
+     */
+    public Executor executor(Priority priority) {
+        return task -> execute(priority, task);
+    }
+
+    /**
+     * Create named daemon threads that belong to a priority class, for pools that are not part of the TaskExecutor
+     * @param name name of the threads, a running number is appended
+     * @param priority priority class of the threads
+     * @return thread factory
+     */
+    public static ThreadFactory threadFactory(String name, Priority priority) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(() -> {
+                CURRENT.set(priority);
+                r.run();
+            }, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            if (priority != Priority.INTERACTIVE)
+                t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        };
+    }
+
+    /**
+     * @return priority class of the calling thread. Threads that do not belong to a class, e.g. the EDT or the threads
+     * of the ScheduleServer, serve someone who is waiting and count as interactive.
+     */
+    public static Priority currentPriority() {
+        Priority priority = CURRENT.get();
+        return priority == null ? Priority.INTERACTIVE : priority;
+    }
+
+    private static ThreadPoolExecutor pool(Priority priority, int limit) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(Math.max(1, limit), Math.max(1, limit), 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory(priority.metricName(), priority));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,67 @@
+package models;
+
+/**
+ * TokenBucket limits the rate of requests. The bucket holds up to burst tokens and is refilled at a steady rate;
+ * every request takes one token and waits for the next one if the bucket is empty. Waiting threads are served in no
+ * particular order.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Create a full bucket
+     * @param perSecond tokens added per second
+     * @param burst the most tokens the bucket holds, i.e. the most requests that may be made back to back
+     */
+    public TokenBucket(double perSecond, int burst) {
+        if (perSecond <= 0 || burst < 1)
+            throw new IllegalArgumentException("rate and burst must be positive");
+        this.tokensPerNano = perSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Take a token, waiting until one is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+            }
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    /**
+     * Take a token if one is available right now
+     * @return true if a token was taken
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1)
+            return false;
+        tokens -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
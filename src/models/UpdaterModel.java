@@ -1,8 +1,11 @@
 package models;
 
-import javax.swing.table.DefaultTableModel;
-import java.util.ArrayList;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * UpdaterModel handles everything related to fetching and updating the list of programmes.
@@ -11,70 +14,154 @@ import java.util.concurrent.ConcurrentHashMap;
  * @version 1.0
  */
 public class UpdaterModel {
+    public static final long HOURS_BEFORE = 6;
+    public static final long HOURS_AFTER = 12;
+    /** A cached schedule older than this is still shown, but revalidated in the background */
+    public static final long FRESH_MILLIS = Duration.ofMinutes(15).toMillis();
+
+    private static final ConcurrentHashMap<String, Flight<Schedule>> inFlight = new ConcurrentHashMap<>();
+
+    private static final Metrics.Counter CACHE_HITS = Metrics.counter("cache.hits");
+    private static final Metrics.Counter CACHE_MISSES = Metrics.counter("cache.misses");
+    private static final Histogram CACHE_AGE = Metrics.histogram("cache.age", "s");
+    private static final Metrics.Counter STALE_SERVED = Metrics.counter("cache.staleServed");
+
+    /**
+     * Fetch the programmes of a channel from the API, making sure only one fetch per channel is in flight at a time.
+     * A caller that asks for a channel which is already being fetched waits for that fetch and shares its result
+     * instead of starting a new one. Different channels never wait for each other, and an interactive caller never
+     * waits for a fetch that a prefetch or a background refresh started: it takes the fetch over and fetches itself.
+     * <p>
+     * Interrupting the calling thread abandons the fetch. If the interrupted thread started the fetch, the callers
+     * sharing it start a fetch of their own instead of getting its result.
+     * @param programMap The programme cache
+     * @param id String with the id of the channel that should be fetched
+     * @return Schedule with the programmes, or null if the fetch failed or was abandoned
+     */
+    static Schedule fetchChannel(ScheduleCache programMap, String id) {
+        Flight<Schedule> flight = new Flight<>();
+        Flight<Schedule> existing;
+        while ((existing = inFlight.putIfAbsent(id, flight)) != null) {
+            if (existing.shouldTakeOver()) {
+                if (inFlight.replace(id, existing, flight))
+                    break;
+                continue;
+            }
+            try {
+                return existing.get();
+            } catch (CancellationException e) {
+                // whoever started the fetch abandoned it, try to start one
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException r ? r : new IllegalStateException(e.getCause());
+            }
+        }
+
+        try {
+            Schedule programmes = new RadioParser().updateChannel(id, programMap);
+            if (programmes == null && Thread.currentThread().isInterrupted())
+                flight.cancel(false);
+            else
+                flight.complete(programmes);
+            return programmes;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, flight);
+        }
+    }
+
+    /**
+     * Fetch a channel again in the background, unless it is already being fetched. The cache listeners are told if
+     * the schedule changed.
+     * @param programMap The programme cache
+     * @param id channel id
+     */
+    static void revalidate(ScheduleCache programMap, String id) {
+        if (!inFlight.containsKey(id))
+            TaskExecutor.shared().execute(TaskExecutor.Priority.BACKGROUND, () -> fetchChannel(programMap, id));
+    }
+
     /**
      * Update the channel with the given id in the hashmap by fetching the data anew with the help of
-     * parser.updateChannel()
-     * @param programMap The hashmap with the cache
+     * parser.updateChannel(). If the API cannot be reached, the cached programmes are shown instead, if there are any.
+     * @param programMap The programme cache
      * @param id String with the id of the channel that should be updated
-     * @return DefaultTableModel containing the information that should be rendered in the GUI
+     * @return the programmes that should be shown, or null if the channel could not be fetched
      */
-    public DefaultTableModel updateChannel(ConcurrentHashMap<String, ArrayList<Programme>> programMap, String id) {
-        ArrayList<Programme> programmes;
-        RadioParser parser = new RadioParser();
-        programmes = parser.updateChannel(id, programMap);
-        return createTable(programmes);
+    public List<Programme> updateChannel(ScheduleCache programMap, String id) {
+        Schedule programmes = fetchChannel(programMap, id);
+        if (programmes == null) {
+            programmes = programMap.get(id);
+            if (programmes != null)
+                STALE_SERVED.increment();
+        }
+        return programmes == null ? null : window(programmes);
     }
 
     /**
-     * Update the current channel with the latest information in the API.
-     * @param programMap Hashmap with the programme cache
-     * @param currentChannel Id of the current channel
-     * @return DefaultTableModel to be rendered in the GUI.
+     * Fetch all the programmes in a channel. Fetch them from the cache if the channel is cached, and from the
+     * parser if no such data exists in the cache. Concurrent calls for the same uncached channel share one fetch.
+     * A cached channel is always answered from the cache at once; if it is older than FRESH_MILLIS it is also
+     * revalidated in the background, and the cache listeners are told when the new schedule is in.
+     * @param programMap Programme cache
+     * @param id Channel id
+     * @return the programmes that should be shown, or null if the channel could not be fetched
      */
-    public DefaultTableModel channelWorker(ConcurrentHashMap<String, ArrayList<Programme>> programMap, String currentChannel) {
-        DefaultTableModel tableModel;
-        tableModel = updateChannel(programMap, currentChannel);
-        if (tableModel != null && (tableModel.getRowCount() > 0))
-            return tableModel;
-        else
-            return null;
+    public List<Programme> getChannel(ScheduleCache programMap, String id) {
+        Schedule programmes = getSchedule(programMap, id);
+        return programmes == null ? null : window(programmes);
     }
 
     /**
-     * Fetch all the programmes in a channel. Fetch them from the cache if the channel is cached, and from the
-     * parser if no such data exists in the cache.
+     * The programmes of a cached channel, without fetching, revalidating or counting it as a use of the channel. For
+     * background work that only redraws what is already cached.
      * @param programMap Programme cache
      * @param id Channel id
-     * @return DefaultTableModel to be rendered in the GUI
+     * @return the programmes that should be shown, or null if the channel is not cached
      */
-    public DefaultTableModel getChannel(ConcurrentHashMap<String, ArrayList<Programme>> programMap, String id) {
-        ArrayList<Programme> programmes;
-        if (programMap.containsKey(id)) {
-            programmes = programMap.get(id);
-        } else {
-            RadioParser parser = new RadioParser();
-            programmes = parser.updateChannel(id, programMap);
-            programMap.put(id, programmes);
-        }
-        return createTable(programmes);
+    public List<Programme> peekChannel(ScheduleCache programMap, String id) {
+        Schedule programmes = programMap.get(id);
+        return programmes == null ? null : window(programmes);
     }
 
     /**
-     * Create and fill a DefaultTableModel with data from an ArrayList of programmes and return it.
-     * @param programmes ArrayList of programmes to add to tablemodel
-     * @return DefaultTableModel to be rendered in GUI
+     * Get the whole schedule of a channel, the same way as getChannel. A cached schedule without any programmes, e.g.
+     * one whose programmes have all ended, is fetched again like an uncached one, and only served if that fails.
+     * @param programMap Programme cache
+     * @param id Channel id
+     * @return Schedule, or null if the channel is not cached and could not be fetched
      */
-    private DefaultTableModel createTable(ArrayList<Programme> programmes) {
-        String[] header = {"bild", "beskrivning", "Program", "Start", "Slut"};
-        DefaultTableModel tableModel = new DefaultTableModel(header, 0);
-        if (!programmes.isEmpty()) {
-            for (Programme p : programmes) {
-                String start = p.LTStart;
-                String end = p.LTEnd;
-                Object[] data = {p.imagePath, p.description, p.name, start, end};
-                tableModel.addRow(data);
+    public Schedule getSchedule(ScheduleCache programMap, String id) {
+        Schedule programmes = programMap.lookup(id);
+        if (programmes == null || programmes.isEmpty()) {
+            CACHE_MISSES.increment();
+            Schedule fetched = fetchChannel(programMap, id);
+            if (fetched != null || programmes == null)
+                programmes = fetched;
+        } else {
+            long age = programMap.getAgeMillis(id);
+            CACHE_HITS.increment();
+            CACHE_AGE.record(age / 1000);
+            if (age > FRESH_MILLIS) {
+                STALE_SERVED.increment();
+                revalidate(programMap, id);
             }
         }
-        return tableModel;
+        return programmes;
+    }
+
+    /**
+     * The part of a schedule that ends at most 6 hours ago and starts at most 12 hours from now. The clock is read
+     * once and the programmes are not copied.
+     * @param programmes Schedule
+     * @return read-only view of the programmes to show
+     */
+    public static List<Programme> window(Schedule programmes) {
+        long now = Instant.now().getEpochSecond();
+        return programmes.between(now - HOURS_BEFORE * 3600, now + HOURS_AFTER * 3600);
     }
 }
@@ -0,0 +1,148 @@
+package views;
+
+import models.Programme;
+
+import javax.swing.table.AbstractTableModel;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ScheduleTableModel is a table model that reads straight from a channel's list of programmes instead of copying
+ * every programme into table cells. When a new schedule is set, only the rows that actually changed are reported to
+ * the table.
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+public class ScheduleTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    public static final int IMAGE = 0;
+    public static final int DESCRIPTION = 1;
+    public static final int NAME = 2;
+    public static final int START = 3;
+    public static final int END = 4;
+
+    private static final String[] HEADER = {"Bild", "Beskrivning", "Program", "Start", "Slut"};
+
+    private List<Programme> programmes;
+
+    /**
+     * The value of a START or END cell. It is shown as the local time of day, but sorted by the instant, so that the
+     * programmes of a window that crosses midnight stay in the order they air.
+     * @param epochSecond the time in epoch seconds
+     */
+    public record Time(long epochSecond) implements Comparable<Time> {
+        @Override
+        public int compareTo(Time other) {
+            return Long.compare(epochSecond, other.epochSecond);
+        }
+
+        @Override
+        public String toString() {
+            return LocalTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault()).toString();
+        }
+    }
+
+    /**
+     * Create a table model on top of a list of programmes. The list is not copied and must not be modified afterwards.
+     * @param programmes programmes to show
+     */
+    public ScheduleTableModel(List<Programme> programmes) {
+        this.programmes = programmes;
+    }
+
+    /**
+     * @return the programmes shown in the table
+     */
+    public List<Programme> getProgrammes() {
+        return programmes;
+    }
+
+    /**
+     * @param row row in the model
+     * @return the programme shown in the row
+     */
+    public Programme getProgramme(int row) {
+        return programmes.get(row);
+    }
+
+    /**
+     * Replace the programmes shown in the table. Rows that are the same at the start and at the end of both lists
+     * are left alone, the rows in between are reported as updated, inserted or deleted. Setting the same list again
+     * does nothing.
+     * Must be called on the EDT.
+     * @param next new programmes to show. The list is not copied and must not be modified afterwards.
+     */
+    public void setProgrammes(List<Programme> next) {
+        List<Programme> prev = programmes;
+        if (prev == next)
+            return;
+        programmes = next;
+
+        int prefix = 0;
+        int max = Math.min(prev.size(), next.size());
+        while (prefix < max && prev.get(prefix).equals(next.get(prefix)))
+            prefix++;
+        int suffix = 0;
+        while (suffix < max - prefix
+                && prev.get(prev.size() - 1 - suffix).equals(next.get(next.size() - 1 - suffix)))
+            suffix++;
+
+        int prevChanged = prev.size() - prefix - suffix;
+        int nextChanged = next.size() - prefix - suffix;
+        int updated = Math.min(prevChanged, nextChanged);
+        if (updated > 0)
+            fireTableRowsUpdated(prefix, prefix + updated - 1);
+        if (nextChanged > prevChanged)
+            fireTableRowsInserted(prefix + updated, prefix + nextChanged - 1);
+        else if (prevChanged > nextChanged)
+            fireTableRowsDeleted(prefix + updated, prefix + prevChanged - 1);
+    }
+
+    /**
+     * @param column column index
+     * @return comparator used to sort the column, times are compared by when they are and not as text
+     */
+    public static Comparator<?> comparator(int column) {
+        if (column == START || column == END)
+            return Comparator.<Time>naturalOrder();
+        return Comparator.<String>naturalOrder();
+    }
+
+    @Override
+    public int getRowCount() {
+        return programmes.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return HEADER.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return HEADER[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == START || column == END ? Time.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Programme p = programmes.get(row);
+        return switch (column) {
+            case IMAGE -> p.imagePath();
+            case DESCRIPTION -> p.description();
+            case NAME -> p.name();
+            case START -> new Time(p.start());
+            case END -> new Time(p.end());
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for CircuitBreaker
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class CircuitBreakerTest {
+    private static final long COOL_DOWN = 100;
+
+    private static CircuitBreaker opened() {
+        CircuitBreaker breaker = new CircuitBreaker(3, COOL_DOWN, 2 * COOL_DOWN);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        return breaker;
+    }
+
+    @Test
+    void opensAfterFailuresInARow() {
+        CircuitBreaker breaker = new CircuitBreaker(3, COOL_DOWN, 2 * COOL_DOWN);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker = opened();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpenLetsOneTrialThroughAndClosesOnSuccess() throws InterruptedException {
+        CircuitBreaker breaker = opened();
+        Thread.sleep(COOL_DOWN + 20);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedTrialReopensForTwiceAsLong() throws InterruptedException {
+        CircuitBreaker breaker = opened();
+        Thread.sleep(COOL_DOWN + 20);
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(COOL_DOWN + 20);
+        assertFalse(breaker.tryAcquire());
+        Thread.sleep(COOL_DOWN);
+        assertTrue(breaker.tryAcquire());
+
+        // the cool-down is capped at twice the first one
+        breaker.onFailure();
+        Thread.sleep(2 * COOL_DOWN + 20);
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void trialThatNeverReportsBackDoesNotBlockForever() throws InterruptedException {
+        CircuitBreaker breaker = opened();
+        Thread.sleep(COOL_DOWN + 20);
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        Thread.sleep(COOL_DOWN + 20);
+        assertTrue(breaker.tryAcquire());
+    }
+}
@@ -0,0 +1,147 @@
+package models;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for ImageCache
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class ImageCacheTest {
+
+    private static byte[] png() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", png);
+        return png.toByteArray();
+    }
+
+    @Test
+    void diskTierStaysWithinBudget(@TempDir Path directory) throws IOException, InterruptedException {
+        byte[] bytes = png();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+            ImageCache cache = new ImageCache(directory, 0, bytes.length * 5L / 2);
+            for (int i = 0; i < 5; i++) {
+                assertNotNull(cache.get(base + i + ".png"));
+                Thread.sleep(20);
+            }
+            assertEquals(5, cache.getMisses());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2, files.count());
+            }
+
+            // the two newest images are the ones kept
+            ImageCache reopened = new ImageCache(directory, 0, bytes.length * 5L / 2);
+            assertNotNull(reopened.get(base + "3.png"));
+            assertNotNull(reopened.get(base + "4.png"));
+            assertEquals(2, reopened.getDiskHits());
+            assertEquals(0, reopened.getMisses());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void interactiveLoadDoesNotWaitForPrefetch(@TempDir Path directory) throws Exception {
+        byte[] bytes = png();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch firstReceived = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                firstReceived.countDown();
+                try {
+                    releaseFirst.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/slow.png";
+            ImageCache cache = new ImageCache(directory, 1 << 20, 1 << 20);
+            CompletableFuture<BufferedImage> prefetch = TaskExecutor.shared()
+                    .submit(TaskExecutor.Priority.PREFETCH, () -> cache.get(url));
+            assertTrue(firstReceived.await(5, TimeUnit.SECONDS));
+
+            assertNotNull(cache.get(url));
+            assertFalse(prefetch.isDone());
+            releaseFirst.countDown();
+            assertNotNull(prefetch.get(5, TimeUnit.SECONDS));
+            assertEquals(2, requests.get());
+        } finally {
+            releaseFirst.countDown();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void brokenFileOnDiskIsDownloadedAgain(@TempDir Path directory) throws IOException {
+        byte[] bytes = png();
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/broken.png";
+            assertNotNull(new ImageCache(directory, 0, 1 << 20).get(url));
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList())
+                    Files.write(file, new byte[] {1, 2, 3});
+            }
+
+            ImageCache reopened = new ImageCache(directory, 0, 1 << 20);
+            assertNotNull(reopened.get(url));
+            assertEquals(1, reopened.getMisses());
+            assertEquals(2, requests.get());
+
+            ImageCache again = new ImageCache(directory, 0, 1 << 20);
+            assertNotNull(again.get(url));
+            assertEquals(1, again.getDiskHits());
+            assertEquals(2, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
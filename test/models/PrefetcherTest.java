@@ -0,0 +1,59 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for Prefetcher
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class PrefetcherTest {
+
+    @Test
+    void onlyRecentPrefetchesAreRemembered() {
+        Prefetcher prefetcher = new Prefetcher();
+        for (int i = 0; i < 10 * Prefetcher.REMEMBERED; i++)
+            prefetcher.prefetched("channel" + i);
+
+        prefetcher.markUsed("channel0");
+        assertEquals(0, prefetcher.getHits());
+        prefetcher.markUsed("channel" + (10 * Prefetcher.REMEMBERED - 1));
+        assertEquals(1, prefetcher.getHits());
+        assertEquals(10 * Prefetcher.REMEMBERED, prefetcher.getPrefetches());
+    }
+
+    @Test
+    void waitingBatchWakesWhenUserRequestFinishes() throws Exception {
+        Prefetcher prefetcher = new Prefetcher();
+        prefetcher.userRequestStarted();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> prefetcher.awaitIdle(cancelled));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        prefetcher.userRequestFinished();
+        assertTrue(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waitingBatchWakesWhenCancelled() throws Exception {
+        Prefetcher prefetcher = new Prefetcher();
+        prefetcher.userRequestStarted();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> prefetcher.awaitIdle(cancelled));
+        Thread.sleep(50);
+
+        cancelled.set(true);
+        prefetcher.cancel();
+        assertFalse(waiting.get(1, TimeUnit.SECONDS));
+    }
+}
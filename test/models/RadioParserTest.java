@@ -0,0 +1,57 @@
+package models;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests for RadioParser
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class RadioParserTest {
+
+    /**
+     * Fetch a schedule from a local server that answers every request with the given status code
+     * @param status status code
+     * @return number of requests the server got
+     */
+    private static int requestsFor(int status) throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            URI base = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+            ApiClient client = new ApiClient(Duration.ofSeconds(2), Duration.ofSeconds(2), 2);
+            RadioParser parser = new RadioParser(client, new ApiEndpoint(base));
+            assertNull(parser.updateChannel("132", new ScheduleCache()));
+        } finally {
+            server.stop(0);
+        }
+        return requests.get();
+    }
+
+    @Test
+    void clientErrorIsNotRetried() throws IOException {
+        assertEquals(1, requestsFor(404));
+    }
+
+    @Test
+    void tooManyRequestsIsRetried() throws IOException {
+        assertEquals(3, requestsFor(429));
+    }
+}
@@ -0,0 +1,142 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for ScheduleCache
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class ScheduleCacheTest {
+    private static final long HOUR = 3600;
+
+    /**
+     * A schedule of 60 one-hour programmes starting at time 0, as the API sends it on every fetch
+     */
+    private static Schedule fetched() {
+        Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+        for (int i = 0; i < 60; i++)
+            builder.addProgramme("Programme " + i, i * HOUR, (i + 1) * HOUR, null, null);
+        return builder.buildSchedule();
+    }
+
+    @Test
+    void refreshAfterTrimIsUnchanged() {
+        ScheduleCache cache = new ScheduleCache();
+        List<ScheduleDiff> events = new ArrayList<>();
+        cache.addListener((id, previous, current, diff) -> events.add(diff));
+
+        cache.put("132", fetched());
+        cache.evictEndedBefore(24 * HOUR);
+        Schedule trimmed = cache.get("132");
+        assertEquals(36, trimmed.size());
+        assertEquals(2, events.size());
+        assertEquals(24, events.get(1).removed.size());
+
+        assertSame(trimmed, cache.put("132", fetched()));
+        assertSame(trimmed, cache.get("132"));
+        assertEquals(2, events.size());
+        assertEquals(1, cache.getUnchangedRefreshes());
+        assertEquals(0, cache.getChangedRefreshes());
+    }
+
+    @Test
+    void listenersSeeConcurrentChangesInOrder() throws InterruptedException {
+        ScheduleCache cache = new ScheduleCache();
+        ConcurrentHashMap<String, Schedule> seen = new ConcurrentHashMap<>();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        cache.addListener((id, previous, current, diff) -> {
+            Schedule last = seen.get(id);
+            if (last != previous)
+                outOfOrder.incrementAndGet();
+            if (current == null)
+                seen.remove(id);
+            else
+                seen.put(id, current);
+        });
+
+        Schedule[] versions = new Schedule[4];
+        for (int v = 0; v < versions.length; v++) {
+            Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+            for (int i = 0; i < 20; i++)
+                builder.addProgramme("Version " + v + " programme " + i, i * HOUR, (i + 1) * HOUR, null, null);
+            versions[v] = builder.buildSchedule();
+        }
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 2000; i++) {
+                    if (i % 50 == 49)
+                        cache.remove("164");
+                    else
+                        cache.put("164", versions[(i + offset) % versions.length]);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : writers)
+            writer.join();
+
+        assertEquals(0, outOfOrder.get());
+        assertSame(cache.get("164"), seen.get("164"));
+        cache.remove("164");
+        assertNull(seen.get("164"));
+    }
+
+    @Test
+    void onlyLookupsCountForAdmission() {
+        long size = fetched().getMemoryEstimate();
+        ScheduleCache cache = new ScheduleCache(size + size / 2);
+        cache.put("132", fetched());
+        for (int i = 0; i < 5; i++)
+            cache.lookup("132");
+        cache.put("164", fetched());
+        assertNull(cache.get("164"));
+        assertEquals(1, cache.getRejections());
+
+        ScheduleCache peeked = new ScheduleCache(size + size / 2);
+        peeked.put("132", fetched());
+        for (int i = 0; i < 5; i++)
+            peeked.get("132");
+        peeked.put("164", fetched());
+        assertNull(peeked.get("132"));
+        assertEquals(0, peeked.getHits());
+        assertEquals(1, cache.getHitRate());
+    }
+
+    @Test
+    void channelTrimmedToNothingIsRemoved() {
+        ScheduleCache cache = new ScheduleCache();
+        List<Schedule> currents = new ArrayList<>();
+        cache.addListener((id, previous, current, diff) -> currents.add(current));
+
+        cache.put("132", fetched());
+        cache.evictEndedBefore(100 * HOUR);
+        assertNull(cache.get("132"));
+        assertEquals(2, currents.size());
+        assertNull(currents.get(1));
+        assertEquals(0, cache.getByteSize());
+        assertEquals(0, cache.getEvictions());
+    }
+}
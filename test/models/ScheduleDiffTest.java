@@ -0,0 +1,59 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for ScheduleDiff
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class ScheduleDiffTest {
+
+    /**
+     * A schedule with two programmes called Ekot that both start at 0, as the API sends for back-to-back bulletins
+     * @param secondDescription description of the second bulletin
+     * @param extra title of a programme added at the end, or null
+     */
+    private static Schedule withDuplicates(String secondDescription, String extra) {
+        Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+        builder.addProgramme("Ekot", 0, 0, null, "Första");
+        builder.addProgramme("Ekot", 0, 300, null, secondDescription);
+        builder.addProgramme("P1 Morgon", 300, 3600, null, "Morgon");
+        if (extra != null)
+            builder.addProgramme(extra, 3600, 7200, null, null);
+        return builder.buildSchedule();
+    }
+
+    @Test
+    void duplicateKeysCompareUnchanged() {
+        ScheduleDiff diff = ScheduleDiff.compute(withDuplicates("Andra", null), withDuplicates("Andra", null));
+        assertTrue(diff.isEmpty(), diff.toString());
+    }
+
+    @Test
+    void duplicateKeysAreMatchedInOrder() {
+        ScheduleDiff diff = ScheduleDiff.compute(withDuplicates("Andra", null), withDuplicates("Ändrad", null));
+        assertEquals(0, diff.added.size());
+        assertEquals(0, diff.removed.size());
+        assertEquals(1, diff.changed.size());
+        assertEquals("Andra", diff.changed.get(0).before().description());
+        assertEquals("Ändrad", diff.changed.get(0).after().description());
+    }
+
+    @Test
+    void addedAndRemovedProgrammes() {
+        ScheduleDiff added = ScheduleDiff.compute(withDuplicates("Andra", null), withDuplicates("Andra", "Nyheter"));
+        assertEquals("+1 -0 ~0", added.toString());
+        assertEquals("Nyheter", added.added.get(0).name());
+
+        ScheduleDiff removed = ScheduleDiff.compute(withDuplicates("Andra", "Nyheter"), withDuplicates("Andra", null));
+        assertEquals("+0 -1 ~0", removed.toString());
+
+        assertEquals("+0 -4 ~0", ScheduleDiff.compute(withDuplicates("Andra", "Nyheter"), null).toString());
+        assertTrue(ScheduleDiff.compute(null, null).isEmpty());
+    }
+}
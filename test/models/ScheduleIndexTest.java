@@ -0,0 +1,56 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for ScheduleIndex
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class ScheduleIndexTest {
+    private static final long HOUR = 3600;
+
+    private static Schedule schedule(String name, long from, int hours) {
+        Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+        for (int i = 0; i < hours; i++)
+            builder.addProgramme(name + " " + i, from + i * HOUR, from + (i + 1) * HOUR, null, null);
+        return builder.buildSchedule();
+    }
+
+    @Test
+    void queriesSeeChannelWhileItIsReplaced() throws InterruptedException {
+        ScheduleCache cache = new ScheduleCache();
+        ScheduleIndex index = new ScheduleIndex(cache);
+        // both versions air at 10h, B also covers hours that A does not
+        Schedule[] versions = {schedule("A", 0, 24), schedule("B", 5 * HOUR, 24)};
+        cache.put("132", versions[0]);
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger missing = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (index.at(10 * HOUR).size() != 1)
+                    missing.incrementAndGet();
+            }
+        });
+        reader.start();
+        for (int i = 1; i <= 20000; i++)
+            cache.put("132", versions[i % 2]);
+        done.set(true);
+        reader.join();
+
+        assertEquals(0, missing.get());
+        assertEquals(1, index.at(10 * HOUR).size());
+        // the last version put is A, which ends at 24h
+        assertTrue(index.at(26 * HOUR).isEmpty());
+        cache.remove("132");
+        assertTrue(index.at(10 * HOUR).isEmpty());
+    }
+}
@@ -0,0 +1,28 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for ScheduleServer
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class ScheduleServerTest {
+
+    @Test
+    void ifNoneMatchComparesWholeTags() {
+        assertTrue(ScheduleServer.matches("\"1a2b-40\"", "1a2b-40"));
+        assertTrue(ScheduleServer.matches("\"1a2b-40-gz\"", "1a2b-40"));
+        assertTrue(ScheduleServer.matches("\"ffff-1\", W/\"1a2b-40\"", "1a2b-40"));
+        assertTrue(ScheduleServer.matches("*", "1a2b-40"));
+
+        assertFalse(ScheduleServer.matches(null, "1a2b-40"));
+        assertFalse(ScheduleServer.matches("\"1a2b-400\"", "1a2b-40"));
+        assertFalse(ScheduleServer.matches("\"1a2b-40-gzip\"", "1a2b-40"));
+        assertFalse(ScheduleServer.matches("\"1a2b\"", "1a2b-40"));
+    }
+}
@@ -0,0 +1,93 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests for ScheduleSnapshot
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class ScheduleSnapshotTest {
+    /** Magic number, version, payload length and CRC32 */
+    private static final int HEADER_BYTES = 20;
+
+    private static Path saved(Path directory) throws IOException {
+        Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+        builder.addProgramme("Ekot", 0, 600, "https://static-cdn.sr.se/ekot.jpg", "Nyheter från Ekot");
+        builder.addProgramme("P1 Morgon", 600, 9000, "https://static-cdn.sr.se/p1.jpg", "Morgonprogram");
+        Path file = directory.resolve("snapshot.bin");
+        ScheduleSnapshot.save(file, List.of(new Channel("132", "P1"), new Channel("164", "P3")),
+                Map.of("132", builder.buildSchedule()));
+        return file;
+    }
+
+    @Test
+    void roundTrip(@TempDir Path directory) throws IOException {
+        ScheduleSnapshot snapshot = ScheduleSnapshot.load(saved(directory));
+        assertNotNull(snapshot);
+        assertEquals(2, snapshot.channels.size());
+        assertEquals("164", snapshot.channels.get(1).id);
+        assertEquals("P3", snapshot.channels.get(1).name);
+        Schedule schedule = snapshot.schedules.get("132");
+        assertEquals(2, schedule.size());
+        assertEquals("Nyheter från Ekot", schedule.get(0).description());
+        assertEquals(9000, schedule.get(1).end());
+    }
+
+    @Test
+    void badChecksumIsIgnored(@TempDir Path directory) throws IOException {
+        Path file = saved(directory);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 3] ^= 0x55;
+        Files.write(file, bytes);
+        assertNull(ScheduleSnapshot.load(file));
+    }
+
+    @Test
+    void truncatedFileIsIgnored(@TempDir Path directory) throws IOException {
+        Path file = saved(directory);
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length : new int[] {0, 7, HEADER_BYTES - 1, HEADER_BYTES, HEADER_BYTES + 10, bytes.length - 1}) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertNull(ScheduleSnapshot.load(file), "truncated to " + length + " bytes");
+        }
+    }
+
+    @Test
+    void otherVersionOrMissingFileIsIgnored(@TempDir Path directory) throws IOException {
+        assertNull(ScheduleSnapshot.load(directory.resolve("missing.bin")));
+        Path file = saved(directory);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[7]++;
+        Files.write(file, bytes);
+        assertNull(ScheduleSnapshot.load(file));
+    }
+
+    @Test
+    void corruptPayloadWithValidChecksumIsIgnored(@TempDir Path directory) throws IOException {
+        Path file = saved(directory);
+        byte[] bytes = Files.readAllBytes(file);
+        // the length of the first channel id, right after savedAt and the channel count
+        ByteBuffer.wrap(bytes).putInt(HEADER_BYTES + 8 + 4, -1);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_BYTES, bytes.length - HEADER_BYTES);
+        ByteBuffer.wrap(bytes).putLong(12, crc.getValue());
+        Files.write(file, bytes);
+        assertNull(ScheduleSnapshot.load(file));
+    }
+}
@@ -0,0 +1,76 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for SearchIndex
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class SearchIndexTest {
+
+    private static Schedule schedule(String lastDescription) {
+        Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+        builder.addProgramme("Ekot", 0, 600, null, "Nyheter från Sveriges Radio");
+        builder.addProgramme("Musikguiden i P3", 600, 3600, null, "Ny musik varje vecka");
+        builder.addProgramme("Sommar i P1", 3600, 7200, null, lastDescription);
+        return builder.buildSchedule();
+    }
+
+    private static List<String> titles(List<SearchIndex.Hit> hits) {
+        return hits.stream().map(hit -> hit.programme().name()).toList();
+    }
+
+    @Test
+    void textIsFolded() {
+        assertEquals(List.of("alands", "radio", "ostersjon", "cafe", "p4"),
+                SearchIndex.tokenize("Ålands Radio: ÖSTERSJÖN, café! P4"));
+    }
+
+    @Test
+    void caseAndDiacriticsDoNotMatter() {
+        ScheduleCache cache = new ScheduleCache();
+        SearchIndex index = new SearchIndex(cache);
+        cache.put("132", schedule("Sommarpratare berättar om Öland"));
+
+        assertEquals(List.of("Sommar i P1"), titles(index.search("oland", 10)));
+        assertEquals(List.of("Sommar i P1"), titles(index.search("BERÄTTAR ÖLAND", 10)));
+        assertEquals(List.of("Ekot"), titles(index.search("fran sveriges", 10)));
+    }
+
+    @Test
+    void onlyTheLastWordIsAPrefix() {
+        ScheduleCache cache = new ScheduleCache();
+        SearchIndex index = new SearchIndex(cache);
+        cache.put("132", schedule("Sommarpratare berättar"));
+
+        assertEquals(List.of("Musikguiden i P3"), titles(index.search("musikg", 10)));
+        assertEquals(List.of("Ekot", "Musikguiden i P3"), titles(index.search("ny", 10)));
+        assertTrue(index.search("musikg ", 10).isEmpty());
+        assertTrue(index.search("musikg varje", 10).isEmpty());
+        assertEquals(List.of("Ekot"), titles(index.search("ny", 1)));
+    }
+
+    @Test
+    void followsTheCache() {
+        ScheduleCache cache = new ScheduleCache();
+        SearchIndex index = new SearchIndex(cache);
+        cache.put("132", schedule("Sommarpratare berättar om Öland"));
+        cache.put("132", schedule("Sommarpratare berättar om Gotland"));
+
+        assertTrue(index.search("öland", 10).isEmpty());
+        assertEquals(List.of("Sommar i P1"), titles(index.search("gotland", 10)));
+        assertEquals("132", index.search("gotland", 10).get(0).channelId());
+
+        cache.remove("132");
+        assertTrue(index.search("gotland", 10).isEmpty());
+        assertEquals(0, index.getDocumentCount());
+        assertEquals(0, index.getTermCount());
+    }
+}
@@ -0,0 +1,28 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for StartupTimings
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class StartupTimingsTest {
+
+    @Test
+    void phasesArePublishedAsGauges() throws InterruptedException {
+        StartupTimings timings = new StartupTimings();
+        timings.mark("testPhase");
+        long first = timings.getPhases().get("testPhase");
+        Thread.sleep(5);
+        timings.mark("testPhase");
+
+        assertEquals(first, timings.getPhases().get("testPhase"));
+        assertEquals(first, Metrics.values().get("startup.testPhase"));
+        assertTrue(first >= 0);
+    }
+}
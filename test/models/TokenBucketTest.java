@@ -0,0 +1,50 @@
+package models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for TokenBucket
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class TokenBucketTest {
+
+    @Test
+    void burstThenEmpty() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        for (int i = 0; i < 3; i++)
+            assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refillsAtTheRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        Thread.sleep(70);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void acquireWaitsForTheNextToken() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        bucket.acquire();
+        long start = System.nanoTime();
+        bucket.acquire();
+        long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(waitedMillis >= 40, "waited " + waitedMillis + " ms");
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}
@@ -0,0 +1,47 @@
+package views;
+
+import models.Programme;
+import models.Schedule;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.TableRowSorter;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for ScheduleTableModel
+ *
+ * @author Alireza Ramezani, id19ari
+ * @version 1.0
+ */
+class ScheduleTableModelTest {
+
+    @Test
+    void timesSortInAiringOrderAcrossMidnight() {
+        long lateEvening = LocalDate.of(2024, 3, 10).atTime(LocalTime.of(23, 30))
+                .atZone(ZoneId.systemDefault()).toEpochSecond();
+        Schedule.ScheduleBuilder builder = new Schedule.ScheduleBuilder();
+        builder.addProgramme("Kvällsjazz", lateEvening, lateEvening + 5400, null, null);
+        builder.addProgramme("Nattradio", lateEvening + 5400, lateEvening + 9000, null, null);
+        List<Programme> programmes = builder.buildSchedule();
+
+        ScheduleTableModel model = new ScheduleTableModel(programmes);
+        assertEquals("23:30", model.getValueAt(0, ScheduleTableModel.START).toString());
+        assertEquals("01:00", model.getValueAt(1, ScheduleTableModel.START).toString());
+
+        TableRowSorter<ScheduleTableModel> sorter = new TableRowSorter<>(model);
+        for (int col = 0; col < model.getColumnCount(); col++)
+            sorter.setComparator(col, ScheduleTableModel.comparator(col));
+        for (int col : new int[] {ScheduleTableModel.START, ScheduleTableModel.END}) {
+            sorter.setSortKeys(List.of(new RowSorter.SortKey(col, SortOrder.ASCENDING)));
+            assertEquals(0, sorter.convertRowIndexToModel(0));
+            assertEquals(1, sorter.convertRowIndexToModel(1));
+        }
+    }
+}